@@ -0,0 +1,144 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.change;
+
+import liquibase.Scope;
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.ValidationErrors;
+import liquibase.executor.Executor;
+import liquibase.executor.ExecutorService;
+import liquibase.resource.ResourceAccessor;
+import liquibase.statement.SqlStatement;
+
+/**
+ * Custom change form of {@code ch:loadFile}, for changelogs which cannot use the ClickHouse namespace, streaming a
+ * changelog resource as is into {@code INSERT INTO t FORMAT ...}:
+ * <pre>{@code
+ * <customChange class="liquibase.ext.clickhouse.change.LoadFileChange"
+ *               tableName="cities" file="data/cities.csv" format="CSVWithNames"/>
+ * }</pre>
+ * It takes the attributes of {@link LoadFileDataChange}, except {@code relativeToChangelogFile}, with
+ * {@code CSVWithNames} as default format. Unlike {@code ch:loadFile}, its checksum does not cover the content of
+ * the file.
+ */
+public class LoadFileChange implements CustomTaskChange {
+
+    private final LoadFileDataChange loadFile = new LoadFileDataChange();
+    private ResourceAccessor resourceAccessor;
+
+    public LoadFileChange() {
+        loadFile.setFormat("CSVWithNames");
+    }
+
+    public String getCatalogName() {
+        return loadFile.getCatalogName();
+    }
+
+    public void setCatalogName(String catalogName) {
+        loadFile.setCatalogName(catalogName);
+    }
+
+    public String getTableName() {
+        return loadFile.getTableName();
+    }
+
+    public void setTableName(String tableName) {
+        loadFile.setTableName(tableName);
+    }
+
+    public String getFile() {
+        return loadFile.getFile();
+    }
+
+    public void setFile(String file) {
+        loadFile.setFile(file);
+    }
+
+    public String getFormat() {
+        return loadFile.getFormat();
+    }
+
+    public void setFormat(String format) {
+        loadFile.setFormat(format);
+    }
+
+    public String getColumns() {
+        return loadFile.getColumns();
+    }
+
+    public void setColumns(String columns) {
+        loadFile.setColumns(columns);
+    }
+
+    public String getCompression() {
+        return loadFile.getCompression();
+    }
+
+    public void setCompression(String compression) {
+        loadFile.setCompression(compression);
+    }
+
+    public Boolean getCompressRequest() {
+        return loadFile.getCompressRequest();
+    }
+
+    public void setCompressRequest(Boolean compressRequest) {
+        loadFile.setCompressRequest(compressRequest);
+    }
+
+    @Override
+    public void execute(Database database) throws CustomChangeException {
+        try {
+            Executor executor = Scope.getCurrentScope().getSingleton(ExecutorService.class)
+                                    .getExecutor("jdbc", database);
+            // the file is resolved by the resource accessor given to the custom change
+            Scope.child(Scope.Attr.resourceAccessor, resourceAccessor != null
+                                                         ? resourceAccessor
+                                                         : Scope.getCurrentScope().getResourceAccessor(), () -> {
+                for (SqlStatement statement : loadFile.generateStatements(database)) {
+                    executor.execute(statement);
+                }
+            });
+        } catch (Exception e) {
+            throw new CustomChangeException("Could not load " + getFile() + " into " + getTableName(), e);
+        }
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return loadFile.getConfirmationMessage();
+    }
+
+    @Override
+    public void setUp() {
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+        this.resourceAccessor = resourceAccessor;
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        return loadFile.validate(database);
+    }
+}
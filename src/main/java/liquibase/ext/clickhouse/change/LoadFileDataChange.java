@@ -0,0 +1,240 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.change;
+
+import liquibase.Scope;
+import liquibase.change.AbstractChange;
+import liquibase.change.ChangeMetaData;
+import liquibase.change.CheckSum;
+import liquibase.change.DatabaseChange;
+import liquibase.change.DatabaseChangeProperty;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.UnexpectedLiquibaseException;
+import liquibase.exception.ValidationErrors;
+import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+import liquibase.ext.clickhouse.statement.InsertFileStatement;
+import liquibase.resource.Resource;
+import liquibase.resource.ResourceAccessor;
+import liquibase.statement.SqlStatement;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Streams a Parquet, Arrow, ORC or Native file, or one of the text formats, into {@code INSERT INTO t FORMAT ...}
+ * without reading its rows in the JVM:
+ * <pre>{@code
+ * <ch:loadFile tableName="events" file="data/events.parquet" format="Parquet" relativeToChangelogFile="true"/>
+ * }</pre>
+ * The checksum covers the bytes of the file, so that a changeset that runs on change is only run again when the
+ * file does, and a changed file of a changeset that has run fails validation like the file of a loadData change.
+ */
+@DatabaseChange(name = "loadFile",
+    description = "Streams a Parquet, Arrow, ORC, Native or text file into a table without parsing its rows",
+    priority = ChangeMetaData.PRIORITY_DATABASE, appliesTo = "table")
+public class LoadFileDataChange extends AbstractChange {
+
+    private static final Set<String> FORMATS = Set.of(
+        "Parquet", "Arrow", "ArrowStream", "ORC", "Native", "RowBinary", "RowBinaryWithNamesAndTypes",
+        "CSV", "CSVWithNames", "CSVWithNamesAndTypes", "TSV", "TSVWithNames", "TSVWithNamesAndTypes",
+        "TabSeparated", "TabSeparatedWithNames", "TabSeparatedWithNamesAndTypes", "JSONEachRow");
+    static final String NAMESPACE = "http://www.liquibase.org/xml/ns/clickhouse";
+
+    private static final Set<String> ENCODINGS = Set.of("gzip", "deflate", "br", "xz", "zstd", "lz4", "bz2");
+
+    private String catalogName;
+    private String tableName;
+    private String file;
+    private String format = "Parquet";
+    private String columns;
+    private String compression;
+    private Boolean relativeToChangelogFile;
+    private Boolean compressRequest;
+
+    @DatabaseChangeProperty(
+        mustEqualExisting = "table.catalog", requiredForDatabase = "none",
+        description = "Name of the database")
+    public String getCatalogName() {
+        return catalogName;
+    }
+
+    public void setCatalogName(String catalogName) {
+        this.catalogName = catalogName;
+    }
+
+    @DatabaseChangeProperty(
+        mustEqualExisting = "table", requiredForDatabase = "all",
+        description = "Name of the table to insert into")
+    public String getTableName() {
+        return tableName;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    @DatabaseChangeProperty(
+        requiredForDatabase = "all",
+        description = "Path of the file to stream")
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    @DatabaseChangeProperty(
+        requiredForDatabase = "none",
+        description = "ClickHouse input format of the file, Parquet by default")
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    @DatabaseChangeProperty(
+        requiredForDatabase = "none",
+        description = "Comma separated columns the file fills, all of them by default")
+    public String getColumns() {
+        return columns;
+    }
+
+    public void setColumns(String columns) {
+        this.columns = columns;
+    }
+
+    @DatabaseChangeProperty(
+        requiredForDatabase = "none",
+        description = "Encoding the file is stored with, decompressed by the server")
+    public String getCompression() {
+        return compression;
+    }
+
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+
+    @DatabaseChangeProperty(
+        requiredForDatabase = "none",
+        description = "Whether the file path is relative to the changelog file")
+    public Boolean getRelativeToChangelogFile() {
+        return relativeToChangelogFile;
+    }
+
+    public void setRelativeToChangelogFile(Boolean relativeToChangelogFile) {
+        this.relativeToChangelogFile = relativeToChangelogFile;
+    }
+
+    @DatabaseChangeProperty(
+        requiredForDatabase = "none",
+        description = "Whether to compress an uncompressed file with LZ4 while it is sent")
+    public Boolean getCompressRequest() {
+        return compressRequest;
+    }
+
+    public void setCompressRequest(Boolean compressRequest) {
+        this.compressRequest = compressRequest;
+    }
+
+    @Override
+    public boolean supports(Database database) {
+        return database instanceof ClickHouseDatabase;
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = super.validate(database);
+        if (format != null && !FORMATS.contains(format)) {
+            errors.addError("Unsupported format " + format + ", expected one of " + FORMATS);
+        }
+        if (compression != null && !compression.isBlank()
+                && !ENCODINGS.contains(compression.toLowerCase(Locale.ROOT))) {
+            errors.addError("Unsupported compression " + compression + ", expected one of " + ENCODINGS);
+        }
+        if (database instanceof ClickHouseDatabase clickHouseDatabase
+                && clickHouseDatabase.getConnection() instanceof JdbcConnection
+                && !clickHouseDatabase.canOpenClient()) {
+            // updateSQL runs on an offline connection and only writes the statement
+            errors.addError("loadFile streams the file through the ClickHouse client, which needs a connection of "
+                                + "the ClickHouse JDBC driver");
+        }
+        return errors;
+    }
+
+    @Override
+    public SqlStatement[] generateStatements(Database database) {
+        String encoding = compression == null || compression.isBlank() ? null : compression;
+        return new SqlStatement[] {
+            new InsertFileStatement(catalogName, tableName, resource(), format, columnList(), encoding,
+                Boolean.TRUE.equals(compressRequest))
+        };
+    }
+
+    @Override
+    public boolean generateStatementsVolatile(Database database) {
+        return true;
+    }
+
+    @Override
+    public CheckSum generateCheckSum() {
+        try (InputStream in = resource().openInputStream()) {
+            return CheckSum.compute(super.generateCheckSum() + ":" + CheckSum.compute(in, false));
+        } catch (IOException e) {
+            throw new UnexpectedLiquibaseException(e);
+        }
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Loaded " + file + " into " + tableName;
+    }
+
+    @Override
+    public String getSerializedObjectNamespace() {
+        return NAMESPACE;
+    }
+
+    private Resource resource() {
+        ResourceAccessor resourceAccessor = Scope.getCurrentScope().getResourceAccessor();
+        try {
+            if (Boolean.TRUE.equals(relativeToChangelogFile) && getChangeSet() != null) {
+                return resourceAccessor.get(getChangeSet().getChangeLog().getPhysicalFilePath()).resolveSibling(file);
+            }
+            return resourceAccessor.getExisting(file);
+        } catch (IOException e) {
+            throw new UnexpectedLiquibaseException("Could not find " + file, e);
+        }
+    }
+
+    private List<String> columnList() {
+        if (columns == null || columns.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(columns.split(",")).map(String::trim).toList();
+    }
+}
@@ -0,0 +1,76 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.changelog;
+
+import liquibase.Scope;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.database.Database;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.ExecutorService;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.ext.clickhouse.sqlgenerator.changelog.template.SelectChangeLogFingerprintTemplate;
+import liquibase.logging.Logger;
+import liquibase.statement.core.RawSqlStatement;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Tells whether a changelog is already applied by comparing its fingerprint with the one stored by the last
+ * deployment, without taking the changelog lock and without reading the history.
+ */
+public final class ChangeLogFastCheck {
+
+    private ChangeLogFastCheck() {
+    }
+
+    /**
+     * Returns true if every changeset of the changelog is applied with its current content. A false result only
+     * means that the fast check cannot tell, the update has to run as usual.
+     */
+    public static boolean isUpToDate(Database database, DatabaseChangeLog changeLog) {
+        if (!ParamsLoader.getExtensionOptions().changeLogFingerprint()) {
+            return false;
+        }
+        Optional<String> expected = ChangeLogFingerprint.of(changeLog);
+        if (expected.isEmpty()) {
+            return false;
+        }
+        var config = ParamsLoader.getLiquibaseClickhouseProperties();
+        String query = config.accept(new SelectChangeLogFingerprintTemplate(database));
+        try {
+            List<String> stored = Scope.getCurrentScope()
+                                      .getSingleton(ExecutorService.class)
+                                      .getExecutor("jdbc", database)
+                                      .queryForList(new RawSqlStatement(query), String.class);
+            boolean upToDate = !stored.isEmpty() && expected.get().equals(stored.get(0));
+            getLogger().info(upToDate ? "The changelog is up to date" : "The changelog has changesets to apply");
+            return upToDate;
+        } catch (DatabaseException e) {
+            // no fingerprint was stored yet
+            getLogger().fine("Could not read the changelog fingerprint: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static Logger getLogger() {
+        return Scope.getCurrentScope().getLog(ChangeLogFastCheck.class);
+    }
+}
@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.changelog;
+
+import liquibase.ChecksumVersion;
+import liquibase.change.CheckSum;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.changelog.RanChangeSet;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * SHA-256 digest of the identities and checksums of a set of changesets, independent of their order. A changelog
+ * and a history with the same fingerprint hold the same changesets with the same content.
+ */
+public final class ChangeLogFingerprint {
+
+    private ChangeLogFingerprint() {
+    }
+
+    /**
+     * Returns the fingerprint of the changesets recorded in the history.
+     */
+    public static String of(Collection<RanChangeSet> ranChangeSets) {
+        // failed and skipped changesets are not written to the history, so they run again
+        Set<ChangeSet.ExecType> notApplied = Set.of(ChangeSet.ExecType.FAILED, ChangeSet.ExecType.SKIPPED);
+        return digest(ranChangeSets.stream()
+                          .filter(ranChangeSet -> !notApplied.contains(ranChangeSet.getExecType()))
+                          .map(ranChangeSet -> entry(
+                              ranChangeSet.getId(), ranChangeSet.getAuthor(), ranChangeSet.getChangeLog(),
+                              ranChangeSet.getLastCheckSum()
+                          )));
+    }
+
+    /**
+     * Returns the fingerprint the history has once every changeset of the changelog is applied, or nothing if the
+     * changelog is never up to date because it contains runAlways changesets.
+     */
+    public static Optional<String> of(DatabaseChangeLog changeLog) {
+        List<ChangeSet> changeSets = changeLog.getChangeSets();
+        if (changeSets.stream().anyMatch(ChangeSet::isAlwaysRun)) {
+            return Optional.empty();
+        }
+        return Optional.of(digest(changeSets.stream().map(
+            changeSet -> entry(
+                changeSet.getId(), changeSet.getAuthor(), changeSet.getStoredFilePath(),
+                changeSet.generateCheckSum(ChecksumVersion.latest())
+            )
+        )));
+    }
+
+    private static String entry(String id, String author, String filePath, CheckSum checkSum) {
+        String fileName = DatabaseChangeLog.normalizePath(filePath);
+        return String.join(
+            "\u0000",
+            id.toLowerCase(Locale.ROOT),
+            author.toLowerCase(Locale.ROOT),
+            fileName == null ? "" : fileName.toLowerCase(Locale.ROOT),
+            String.valueOf(checkSum)
+        );
+    }
+
+    private static String digest(Stream<String> entries) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        entries.sorted().forEach(entry -> digest.update((entry + "\n").getBytes(StandardCharsets.UTF_8)));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
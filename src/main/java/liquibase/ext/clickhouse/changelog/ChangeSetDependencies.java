@@ -0,0 +1,147 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.changelog;
+
+import liquibase.change.Change;
+import liquibase.change.core.TagDatabaseChange;
+import liquibase.changelog.ChangeSet;
+import liquibase.database.Database;
+import liquibase.structure.DatabaseObject;
+import liquibase.structure.core.Column;
+import liquibase.structure.core.Index;
+import liquibase.structure.core.Relation;
+import liquibase.structure.core.Schema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Dependencies between the changesets of a deployment. A changeset depends on every earlier changeset sharing a
+ * table with it, and on every earlier changeset at all when the tables of either one are unknown, e.g. for raw
+ * SQL. A changeset with the {@value #DEPENDS_ON} attribute depends on the listed changesets only. A changeset
+ * reading the history, by a precondition or a {@code tagDatabase}, depends on every earlier changeset anyway.
+ */
+final class ChangeSetDependencies {
+
+    static final String DEPENDS_ON = "dependsOn";
+
+    private ChangeSetDependencies() {
+    }
+
+    /**
+     * Returns, for each changeset, the indexes of the earlier changesets which have to complete before it runs.
+     */
+    static List<Set<Integer>> of(List<ChangeSet> changeSets, Database database) {
+        List<Optional<Set<String>>> tables = changeSets.stream()
+                                                 .map(changeSet -> referencedTables(changeSet, database))
+                                                 .toList();
+        List<Set<Integer>> dependencies = new ArrayList<>(changeSets.size());
+        for (int i = 0; i < changeSets.size(); i++) {
+            Object declared = changeSets.get(i).getAttribute(DEPENDS_ON);
+            Set<String> declaredIds = declared == null ? null : declaredIds(declared);
+            Set<Integer> earlier = new TreeSet<>();
+            for (int j = 0; j < i; j++) {
+                boolean dependent = readsHistory(changeSets.get(i))
+                                        || (declaredIds == null
+                                                ? shareTables(tables.get(i), tables.get(j))
+                                                : declaredIds.contains(changeSets.get(j).getId()));
+                if (dependent) {
+                    earlier.add(j);
+                }
+            }
+            dependencies.add(earlier);
+        }
+        return dependencies;
+    }
+
+    /**
+     * Tells whether the changeset reads the history of the earlier changesets, which then have to be recorded
+     * before it runs.
+     */
+    static boolean readsHistory(ChangeSet changeSet) {
+        return changeSet.getPreconditions() != null
+                   || changeSet.getChanges().stream().anyMatch(TagDatabaseChange.class::isInstance);
+    }
+
+    private static boolean shareTables(Optional<Set<String>> tables, Optional<Set<String>> otherTables) {
+        if (tables.isEmpty() || otherTables.isEmpty()) {
+            return true;
+        }
+        return otherTables.get().stream().anyMatch(tables.get()::contains);
+    }
+
+    private static Set<String> declaredIds(Object declared) {
+        Set<String> ids = new HashSet<>();
+        Arrays.stream(declared.toString().split(","))
+            .map(String::trim)
+            .filter(id -> !id.isEmpty())
+            .forEach(ids::add);
+        return ids;
+    }
+
+    /**
+     * Returns the qualified names of the tables touched by the changeset, or nothing if any of its changes does
+     * not tell.
+     */
+    static Optional<Set<String>> referencedTables(ChangeSet changeSet, Database database) {
+        Set<String> tables = new HashSet<>();
+        for (Change change : changeSet.getChanges()) {
+            Set<DatabaseObject> objects;
+            try {
+                objects = change.getAffectedDatabaseObjects(database);
+            } catch (RuntimeException e) {
+                return Optional.empty();
+            }
+            if (objects == null || objects.isEmpty()) {
+                return Optional.empty();
+            }
+            for (DatabaseObject object : objects) {
+                Optional<String> table = tableName(object, database);
+                if (table.isEmpty()) {
+                    return Optional.empty();
+                }
+                tables.add(table.get());
+            }
+        }
+        return Optional.of(tables);
+    }
+
+    private static Optional<String> tableName(DatabaseObject object, Database database) {
+        DatabaseObject relation = object;
+        if (object instanceof Column column) {
+            relation = column.getRelation();
+        } else if (object instanceof Index index) {
+            relation = index.getRelation();
+        }
+        if (!(relation instanceof Relation) || relation.getName() == null) {
+            return Optional.empty();
+        }
+        Schema schema = relation.getSchema();
+        String catalog = schema == null || schema.getCatalogName() == null
+                             ? database.getDefaultCatalogName()
+                             : schema.getCatalogName();
+        return Optional.of(catalog + "." + relation.getName());
+    }
+}
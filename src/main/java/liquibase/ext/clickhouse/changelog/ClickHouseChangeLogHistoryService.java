@@ -0,0 +1,456 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.changelog;
+
+import liquibase.ContextExpression;
+import liquibase.Labels;
+import liquibase.Scope;
+import liquibase.change.CheckSum;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.changelog.RanChangeSet;
+import liquibase.changelog.StandardChangeLogHistoryService;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
+import liquibase.exception.UnexpectedLiquibaseException;
+import liquibase.executor.Executor;
+import liquibase.executor.ExecutorService;
+import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+import liquibase.ext.clickhouse.database.MutationTracker;
+import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.ExtensionOptions;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.ext.clickhouse.sqlgenerator.changelog.ChangelogColumns;
+import liquibase.ext.clickhouse.sqlgenerator.changelog.MarkChangeSetRanGeneratorClickhouse;
+import liquibase.ext.clickhouse.sqlgenerator.changelog.template.CreateChangeLogFingerprintTableTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changelog.template.CreateDatabaseChangeLogTableTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changelog.template.InsertChangeLogFingerprintTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changelog.template.MigrateDatabaseChangeLogTableTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changelog.template.SelectChangeLogFingerprintTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changelog.template.SelectRanChangeSetsTemplate;
+import liquibase.lockservice.LockServiceFactory;
+import liquibase.logging.Logger;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.InsertSetStatement;
+import liquibase.statement.core.InsertStatement;
+import liquibase.statement.core.MarkChangeSetRanStatement;
+import liquibase.statement.core.RawParameterizedSqlStatement;
+import liquibase.statement.core.RawSqlStatement;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Keeps the rows of freshly executed changesets in memory and writes them to DATABASECHANGELOG with
+ * multi-row INSERTs, when {@code changelog.markRanBatchSize} is set. The buffer is flushed once it reaches
+ * the configured size, before the history is read or modified and when the changelog lock is released,
+ * which happens at the end of every deployment, including failed ones.
+ * <p>
+ * The history is read once, with a single query streamed over JDBC which keeps only the newest row of every
+ * changeset, as re-runs may be recorded as extra rows when {@code changelog.appendOnlyReruns} is set. The ran
+ * changesets are then indexed by id, author and file name, and ORDEREXECUTED values are handed out by a local
+ * counter seeded from the history. A standalone changelog table created before the version column was
+ * introduced is migrated on the first initialization under the changelog lock.
+ */
+public class ClickHouseChangeLogHistoryService extends StandardChangeLogHistoryService {
+
+    private final MarkChangeSetRanGeneratorClickhouse markChangeSetRanGenerator =
+        new MarkChangeSetRanGeneratorClickhouse();
+    private final List<InsertStatement> pendingInserts = new ArrayList<>();
+    private final Map<ChangeSetKey, RanChangeSet> ranChangeSetIndex = new HashMap<>();
+    private List<RanChangeSet> ranChangeSets;
+    private Integer lastOrderExecuted;
+    private Boolean hasVersionColumn;
+    private String storedFingerprint;
+    private MutationTracker mutationTracker;
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_DATABASE;
+    }
+
+    @Override
+    public boolean supports(Database database) {
+        return database instanceof ClickHouseDatabase;
+    }
+
+    @Override
+    public void reset() {
+        try {
+            flushPendingChangeSets();
+        } catch (DatabaseException e) {
+            throw new UnexpectedLiquibaseException(e);
+        }
+        ranChangeSets = null;
+        ranChangeSetIndex.clear();
+        lastOrderExecuted = null;
+        hasVersionColumn = null;
+        storedFingerprint = null;
+        super.reset();
+    }
+
+    @Override
+    public boolean hasDatabaseChangeLogTable() {
+        // a table reported by the cached system.tables probe still exists, a missing one may have been created since
+        try {
+            if (((ClickHouseDatabase) getDatabase()).getLiquibaseTables(getExecutor()).changeLogTable().isPresent()) {
+                return true;
+            }
+        } catch (DatabaseException e) {
+            getLogger().fine("Could not read system.tables: " + e.getMessage());
+        }
+        return super.hasDatabaseChangeLogTable();
+    }
+
+    @Override
+    public List<RanChangeSet> getRanChangeSets() throws DatabaseException {
+        if (ranChangeSets == null) {
+            // rows which are still buffered would be missing from the read
+            flushPendingChangeSets();
+            ranChangeSets = new ArrayList<>();
+            if (hasDatabaseChangeLogTable()) {
+                loadRanChangeSets().forEach(this::addRanChangeSet);
+            }
+        }
+        return Collections.unmodifiableList(ranChangeSets);
+    }
+
+    @Override
+    public RanChangeSet getRanChangeSet(ChangeSet changeSet) throws DatabaseException {
+        getRanChangeSets();
+        return ranChangeSetIndex.get(ChangeSetKey.of(changeSet));
+    }
+
+    @Override
+    public int getNextSequenceValue() throws LiquibaseException {
+        if (lastOrderExecuted == null) {
+            lastOrderExecuted = getRanChangeSets().stream()
+                                    .map(RanChangeSet::getOrderExecuted)
+                                    .filter(Objects::nonNull)
+                                    .max(Integer::compare)
+                                    .orElse(0);
+        }
+        return ++lastOrderExecuted;
+    }
+
+    @Override
+    public void init() throws DatabaseException {
+        super.init();
+        if (hasVersionColumn == null || !hasVersionColumn && hasChangeLogLock()) {
+            // checked again once the lock is held, as the migration only runs under the lock
+            hasVersionColumn = checkVersionColumn();
+        }
+        startAsyncDdl();
+        if (ParamsLoader.getExtensionOptions().awaitMutations() && getExecutor().updatesDatabase()) {
+            if (mutationTracker == null) {
+                mutationTracker = new MutationTracker();
+            }
+            mutationTracker.start(getExecutor());
+        }
+    }
+
+    @Override
+    public List<Map<String, ?>> queryDatabaseChangeLogTable(Database database) throws DatabaseException {
+        var config = ParamsLoader.getLiquibaseClickhouseProperties();
+        var query = config.accept(new SelectRanChangeSetsTemplate(database, Boolean.TRUE.equals(hasVersionColumn)));
+        return getExecutor().queryForList(new RawSqlStatement(query));
+    }
+
+    @Override
+    public void setExecType(ChangeSet changeSet, ChangeSet.ExecType execType) throws DatabaseException {
+        // a changeset run after the lock was taken over may have raced another deployment
+        ((ClickHouseDatabase) getDatabase()).checkChangeLogLock();
+        boolean ran = execType == ChangeSet.ExecType.EXECUTED || execType == ChangeSet.ExecType.RERAN;
+        if (ran) {
+            // the changeset only succeeds once its ON CLUSTER DDL is done on all hosts
+            ((ClickHouseDatabase) getDatabase()).awaitAsyncDdl(getExecutor());
+        }
+        // the tables mutated by the statements the changeset sent, e.g. by its SQL
+        Set<String> tables = new HashSet<>(((ClickHouseDatabase) getDatabase()).takeMutatedTables());
+        if (mutationTracker != null && ran) {
+            // the changeset only succeeds once its mutations are done
+            ChangeSetDependencies.referencedTables(changeSet, getDatabase()).ifPresent(tables::addAll);
+            if (tables.isEmpty()) {
+                getLogger().fine("ChangeSet " + changeSet + " mutated no known table, its mutations are not awaited");
+            }
+            ExtensionOptions options = ParamsLoader.getExtensionOptions();
+            mutationTracker.await(
+                getExecutor(), tables, options.mutationTimeoutSeconds(), options.mutationPollMillis());
+        }
+        if (isBuffered(execType)) {
+            var statement = new MarkChangeSetRanStatement(changeSet, execType);
+            pendingInserts.add(markChangeSetRanGenerator.generateInsertStatement(statement, getDatabase()));
+        } else {
+            super.setExecType(changeSet, execType);
+        }
+        if (ranChangeSets != null) {
+            addRanChangeSet(new RanChangeSet(changeSet, execType, null, null));
+        }
+        if (pendingInserts.size() >= ParamsLoader.getExtensionOptions().markRanBatchSize()) {
+            flushPendingChangeSets();
+        }
+    }
+
+    @Override
+    public void removeFromHistory(ChangeSet changeSet) throws DatabaseException {
+        flushPendingChangeSets();
+        super.removeFromHistory(changeSet);
+        if (ranChangeSets != null) {
+            ranChangeSets.remove(ranChangeSetIndex.remove(ChangeSetKey.of(changeSet)));
+        }
+    }
+
+    @Override
+    public void tag(String tagString) throws DatabaseException {
+        flushPendingChangeSets();
+        super.tag(tagString);
+        if (ranChangeSets != null && !ranChangeSets.isEmpty()) {
+            ranChangeSets.get(ranChangeSets.size() - 1).setTag(tagString);
+        }
+    }
+
+    @Override
+    public boolean tagExists(String tag) throws DatabaseException {
+        flushPendingChangeSets();
+        return super.tagExists(tag);
+    }
+
+    @Override
+    public void destroy() throws DatabaseException {
+        pendingInserts.clear();
+        ranChangeSets = null;
+        ranChangeSetIndex.clear();
+        super.destroy();
+        ((ClickHouseDatabase) getDatabase()).resetLiquibaseTables();
+    }
+
+    /**
+     * Writes the buffered DATABASECHANGELOG rows, at most {@code changelog.markRanBatchSize} rows per INSERT.
+     */
+    public void flushPendingChangeSets() throws DatabaseException {
+        if (pendingInserts.isEmpty()) {
+            return;
+        }
+        Database database = getDatabase();
+        var insertSet = new InsertSetStatement(
+            database.getLiquibaseCatalogName(),
+            database.getLiquibaseSchemaName(),
+            database.getDatabaseChangeLogTableName(),
+            Math.max(1, ParamsLoader.getExtensionOptions().markRanBatchSize())
+        );
+        pendingInserts.forEach(insertSet::addInsertStatement);
+        getLogger().fine(String.format("Writing %d buffered changelog rows", insertSet.getStatements().size()));
+        getExecutor().execute(insertSet);
+        database.commit();
+        // the rows are kept until they are written, so that a failed flush is tried again by the next one, a row
+        // written twice is collapsed by the table engine
+        pendingInserts.clear();
+    }
+
+    /**
+     * Stores the fingerprint of the history, when it was read under the current lock and differs from the stored
+     * one. Requires {@code changelog.fingerprint}.
+     */
+    public void storeFingerprint() throws DatabaseException {
+        if (!ParamsLoader.getExtensionOptions().changeLogFingerprint() || ranChangeSets == null) {
+            return;
+        }
+        flushPendingChangeSets();
+        Database database = getDatabase();
+        var config = ParamsLoader.getLiquibaseClickhouseProperties();
+        if (storedFingerprint == null) {
+            try {
+                String query = config.accept(new SelectChangeLogFingerprintTemplate(database));
+                List<String> stored = queryForStrings(new RawSqlStatement(query));
+                storedFingerprint = stored.isEmpty() ? "" : stored.get(0);
+            } catch (DatabaseException e) {
+                // the table is created with the first fingerprint
+                storedFingerprint = "";
+            }
+        }
+        String fingerprint = ChangeLogFingerprint.of(ranChangeSets);
+        if (fingerprint.equals(storedFingerprint)) {
+            return;
+        }
+        String createTable = config.accept(new CreateChangeLogFingerprintTableTemplate(database));
+        getExecutor().execute(new RawSqlStatement(createTable));
+        String insert = config.accept(new InsertChangeLogFingerprintTemplate(database, fingerprint));
+        getExecutor().execute(new RawSqlStatement(insert));
+        database.commit();
+        storedFingerprint = fingerprint;
+    }
+
+    private List<RanChangeSet> loadRanChangeSets() throws DatabaseException {
+        Database database = getDatabase();
+        if (!(database.getConnection() instanceof JdbcConnection connection)) {
+            return super.getRanChangeSets();
+        }
+        var config = ParamsLoader.getLiquibaseClickhouseProperties();
+        var query = config.accept(new SelectRanChangeSetsTemplate(database, Boolean.TRUE.equals(hasVersionColumn)));
+        getLogger().info("Reading from " + database.getDatabaseChangeLogTableName());
+        // the rows are turned into changesets as they arrive, without collecting them first
+        List<RanChangeSet> result = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(query)) {
+            while (resultSet.next()) {
+                result.add(toRanChangeSet(resultSet));
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+        return result;
+    }
+
+    private static RanChangeSet toRanChangeSet(ResultSet resultSet) throws SQLException {
+        String md5sum = resultSet.getString(ChangelogColumns.MD5SUM.toString());
+        String orderExecuted = resultSet.getString(ChangelogColumns.ORDEREXECUTED.toString());
+        var ranChangeSet = new RanChangeSet(
+            DatabaseChangeLog.normalizePath(resultSet.getString(ChangelogColumns.FILENAME.toString())),
+            resultSet.getString(ChangelogColumns.ID.toString()),
+            resultSet.getString(ChangelogColumns.AUTHOR.toString()),
+            md5sum == null ? null : CheckSum.parse(md5sum),
+            resultSet.getTimestamp(ChangelogColumns.DATEEXECUTED.toString()),
+            resultSet.getString(ChangelogColumns.TAG.toString()),
+            ChangeSet.ExecType.valueOf(resultSet.getString(ChangelogColumns.EXECTYPE.toString())),
+            resultSet.getString(ChangelogColumns.DESCRIPTION.toString()),
+            resultSet.getString(ChangelogColumns.COMMENTS.toString()),
+            new ContextExpression(resultSet.getString(ChangelogColumns.CONTEXTS.toString())),
+            new Labels(resultSet.getString(ChangelogColumns.LABELS.toString())),
+            resultSet.getString(ChangelogColumns.DEPLOYMENT_ID.toString())
+        );
+        ranChangeSet.setOrderExecuted(orderExecuted == null ? null : Integer.valueOf(orderExecuted));
+        ranChangeSet.setLiquibaseVersion(resultSet.getString(ChangelogColumns.LIQUIBASE.toString()));
+        return ranChangeSet;
+    }
+
+    private void addRanChangeSet(RanChangeSet ranChangeSet) {
+        var key = ChangeSetKey.of(ranChangeSet.getId(), ranChangeSet.getAuthor(), ranChangeSet.getChangeLog());
+        RanChangeSet replaced = ranChangeSetIndex.put(key, ranChangeSet);
+        if (replaced != null) {
+            // a re-run, the history keeps a single entry per changeset
+            ranChangeSets.remove(replaced);
+        }
+        ranChangeSets.add(ranChangeSet);
+    }
+
+    private boolean checkVersionColumn() throws DatabaseException {
+        Database database = getDatabase();
+        var statement = new RawParameterizedSqlStatement(
+            "SELECT name FROM system.columns WHERE database = ? AND table = ?",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogTableName()
+        );
+        List<String> columns = queryForStrings(statement);
+        if (columns.isEmpty()) {
+            // the table is only created in the SQL output of updateSql
+            return false;
+        }
+        if (columns.contains(CreateDatabaseChangeLogTableTemplate.VERSION)) {
+            return true;
+        }
+        var config = ParamsLoader.getLiquibaseClickhouseProperties();
+        List<String> migration = config.accept(new MigrateDatabaseChangeLogTableTemplate(database));
+        if (migration.isEmpty() || !getExecutor().updatesDatabase()) {
+            return false;
+        }
+        if (!hasChangeLogLock()) {
+            // the table is exchanged, which must not happen while another deployment writes to it
+            getLogger().fine("Deferring the migration of " + database.getDatabaseChangeLogTableName()
+                                 + " until the changelog lock is held");
+            return false;
+        }
+        getLogger().info("Adding the version column to " + database.getDatabaseChangeLogTableName());
+        for (String query : migration) {
+            getExecutor().execute(new RawSqlStatement(query));
+        }
+        return true;
+    }
+
+    /**
+     * Turns on the asynchronous ON CLUSTER DDL once the Liquibase tables exist, for the changesets of the
+     * deployment holding the lock. The lock service waits for the DDL before releasing the lock.
+     */
+    private void startAsyncDdl() throws DatabaseException {
+        if (ParamsLoader.getExtensionOptions().asyncDdl()
+                && ParamsLoader.getLiquibaseClickhouseProperties() instanceof ClusterConfig clusterConfig
+                && getExecutor().updatesDatabase()
+                && hasChangeLogLock()) {
+            ((ClickHouseDatabase) getDatabase()).startAsyncDdl(clusterConfig.clusterName(), getExecutor());
+        }
+    }
+
+    private boolean hasChangeLogLock() {
+        return LockServiceFactory.getInstance().getLockService(getDatabase()).hasChangeLogLock();
+    }
+
+    private List<String> queryForStrings(SqlStatement statement) throws DatabaseException {
+        List<?> rows = getExecutor().queryForList(statement, String.class);
+        return rows.stream().map(String.class::cast).toList();
+    }
+
+    private boolean isBuffered(ChangeSet.ExecType execType) {
+        // FAILED and SKIPPED changesets are not written at all, re-runs replace rows already in the history
+        return ParamsLoader.getExtensionOptions().markRanBatchSize() > 0
+                   && !execType.ranBefore
+                   && !Set.of(ChangeSet.ExecType.FAILED, ChangeSet.ExecType.SKIPPED).contains(execType)
+                   && getExecutor().updatesDatabase();
+    }
+
+    private Executor getExecutor() {
+        return Scope.getCurrentScope()
+                   .getSingleton(ExecutorService.class)
+                   .getExecutor("jdbc", getDatabase());
+    }
+
+    private Logger getLogger() {
+        return Scope.getCurrentScope().getLog(ClickHouseChangeLogHistoryService.class);
+    }
+
+    /**
+     * Identity of a changeset, compared the same way as {@link RanChangeSet#isSameAs(ChangeSet)} does.
+     */
+    private record ChangeSetKey(String id, String author, String fileName) {
+
+        static ChangeSetKey of(ChangeSet changeSet) {
+            return of(changeSet.getId(), changeSet.getAuthor(), changeSet.getFilePath());
+        }
+
+        static ChangeSetKey of(String id, String author, String filePath) {
+            String fileName = DatabaseChangeLog.normalizePath(filePath);
+            return new ChangeSetKey(
+                id.toLowerCase(Locale.ROOT),
+                author.toLowerCase(Locale.ROOT),
+                fileName == null ? null : fileName.toLowerCase(Locale.ROOT)
+            );
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.changelog;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.RanChangeSet;
+import liquibase.changelog.visitor.ValidatingVisitor;
+import liquibase.changelog.visitor.ValidatingVisitorGenerator;
+import liquibase.database.Database;
+import liquibase.exception.LiquibaseException;
+import liquibase.ext.clickhouse.database.ChangeSetSettings;
+import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+
+import java.util.List;
+
+/**
+ * Validates the ClickHouse attributes of the changesets along with their changes, so that a malformed
+ * {@code ch:settings} fails the validation of the changelog rather than its changeset halfway through an update.
+ */
+public class ClickHouseValidatingVisitorGenerator implements ValidatingVisitorGenerator {
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_DATABASE;
+    }
+
+    @Override
+    public ValidatingVisitor generateValidatingVisitor(List<RanChangeSet> ranChangeSetList) {
+        return new ValidatingVisitor(ranChangeSetList) {
+            @Override
+            protected void additionalValidations(ChangeSet changeSet, Database database, boolean shouldValidate,
+                                                 boolean ran) {
+                super.additionalValidations(changeSet, database, shouldValidate, ran);
+                if (!shouldValidate || !(database instanceof ClickHouseDatabase)) {
+                    return;
+                }
+                try {
+                    ChangeSetSettings.of(changeSet);
+                } catch (LiquibaseException e) {
+                    // the message names the changeset already
+                    getValidationErrors().addError(e.getMessage());
+                    changeSet.setValidationFailed(true);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,302 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.changelog;
+
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.RuntimeEnvironment;
+import liquibase.Scope;
+import liquibase.ThreadLocalScopeManager;
+import liquibase.changelog.ChangeLogHistoryService;
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
+import liquibase.changelog.ChangeLogIterator;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.changelog.filter.ChangeSetFilterResult;
+import liquibase.changelog.filter.ContextChangeSetFilter;
+import liquibase.changelog.filter.DbmsChangeSetFilter;
+import liquibase.changelog.filter.IgnoreChangeSetFilter;
+import liquibase.changelog.filter.LabelChangeSetFilter;
+import liquibase.changelog.filter.ShouldRunChangeSetFilter;
+import liquibase.changelog.visitor.ChangeSetVisitor;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
+import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.lockservice.LockService;
+import liquibase.lockservice.LockServiceFactory;
+import liquibase.logging.Logger;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Updates the database like {@code Liquibase.update}, but runs the changesets which do not depend on each other
+ * at the same time. With {@code ON CLUSTER} every DDL waits for the slowest replica, so independent DDLs are
+ * better waited for together. The dependencies are described by {@link ChangeSetDependencies}, a changeset can
+ * declare them with the {@value ChangeSetDependencies#DEPENDS_ON} attribute.
+ *
+ * <p>Each running changeset uses its own connection, while the history is written over the connection of the
+ * database in changelog order, as soon as all the earlier changesets are done. A changeset is recorded before
+ * the changesets depending on it start, and a changeset reading the history, by a precondition or a
+ * {@code tagDatabase}, starts once all the earlier ones are written.
+ */
+public final class ParallelChangeLogUpdate {
+
+    private final Database database;
+    private final Callable<Connection> connections;
+
+    /**
+     * @param database    the database holding the changelog lock and the history
+     * @param connections opens the connections the changesets run on, to the same database
+     */
+    public ParallelChangeLogUpdate(Database database, Callable<Connection> connections) {
+        this.database = database;
+        this.connections = connections;
+    }
+
+    public void update(DatabaseChangeLog changeLog, Contexts contexts, LabelExpression labels)
+        throws LiquibaseException {
+        LockService lockService = LockServiceFactory.getInstance().getLockService(database);
+        lockService.waitForLock();
+        try {
+            ChangeLogHistoryService historyService = historyServices().getChangeLogService(database);
+            historyService.init();
+            historyService.generateDeploymentId();
+            changeLog.validate(database, contexts, labels);
+            List<ChangeSet> changeSets = pendingChangeSets(changeLog, contexts, labels);
+            if (!changeSets.isEmpty()) {
+                run(changeSets);
+            }
+        } finally {
+            lockService.releaseLock();
+        }
+    }
+
+    private List<ChangeSet> pendingChangeSets(DatabaseChangeLog changeLog, Contexts contexts, LabelExpression labels)
+        throws LiquibaseException {
+        List<ChangeSet> changeSets = new ArrayList<>();
+        ChangeLogIterator iterator = new ChangeLogIterator(
+            changeLog,
+            new ShouldRunChangeSetFilter(database),
+            new ContextChangeSetFilter(contexts),
+            new LabelChangeSetFilter(labels),
+            new DbmsChangeSetFilter(database),
+            new IgnoreChangeSetFilter()
+        );
+        iterator.run(new ChangeSetVisitor() {
+            @Override
+            public Direction getDirection() {
+                return Direction.FORWARD;
+            }
+
+            @Override
+            public void visit(
+                ChangeSet changeSet, DatabaseChangeLog databaseChangeLog, Database database,
+                Set<ChangeSetFilterResult> filterResults
+            ) {
+                changeSets.add(changeSet);
+            }
+        }, new RuntimeEnvironment(database, contexts, labels));
+        return changeSets;
+    }
+
+    private void run(List<ChangeSet> changeSets) throws LiquibaseException {
+        List<Set<Integer>> dependencies = ChangeSetDependencies.of(changeSets, database);
+        List<ChangeSet.RunStatus> runStatuses = new ArrayList<>(changeSets.size());
+        for (ChangeSet changeSet : changeSets) {
+            runStatuses.add(database.getRunStatus(changeSet));
+        }
+        int parallelism = Math.clamp(ParamsLoader.getExtensionOptions().changeLogParallelism(), 1, changeSets.size());
+        getLogger().info(String.format("Running %d changesets on up to %d connections", changeSets.size(),
+            parallelism));
+        BlockingQueue<Database> workers = new ArrayBlockingQueue<>(parallelism);
+        Scope scope = Scope.getCurrentScope();
+        AtomicBoolean failed = new AtomicBoolean();
+        // every thread gets a scope stack of its own, starting at the scope of the update, before it runs a task;
+        // the manager of the calling thread is left alone, so there is nothing to restore afterwards
+        ThreadFactory threadFactory = Thread.ofVirtual().name("liquibase-clickhouse-changeset-", 0).factory();
+        try (var threads = Executors.newThreadPerTaskExecutor(task -> threadFactory.newThread(() -> {
+            Scope.setScopeManager(new ThreadLocalScopeManager(scope));
+            task.run();
+        }))) {
+            for (int i = 0; i < parallelism; i++) {
+                workers.add(openWorker());
+            }
+            List<CompletableFuture<ChangeSet.ExecType>> recorded = new ArrayList<>(changeSets.size());
+            // completes once every changeset so far is recorded or will not be
+            CompletableFuture<Void> settled = CompletableFuture.completedFuture(null);
+            for (int i = 0; i < changeSets.size(); i++) {
+                ChangeSet changeSet = changeSets.get(i);
+                ChangeSet.RunStatus runStatus = runStatuses.get(i);
+                CompletableFuture<?>[] earlier = dependencies.get(i).stream()
+                                                     .map(recorded::get)
+                                                     .toArray(CompletableFuture<?>[]::new);
+                // a changeset whose dependency failed completes with the same failure without running
+                CompletableFuture<ChangeSet.ExecType> result = CompletableFuture.allOf(earlier).thenApplyAsync(
+                    ignored -> execute(changeSet, workers, failed), threads);
+                // the dependents of the changeset wait for its record, which follows the earlier ones
+                CompletableFuture<ChangeSet.ExecType> record = settled.thenCombineAsync(
+                    result, (ignored, execType) -> record(changeSet, runStatus, execType, failed), threads);
+                recorded.add(record);
+                settled = CompletableFuture.allOf(settled, record.handle((execType, e) -> null));
+            }
+            awaitResults(recorded);
+        } finally {
+            closeWorkers(workers);
+        }
+    }
+
+    private ChangeSet.ExecType execute(ChangeSet changeSet, BlockingQueue<Database> workers, AtomicBoolean failed) {
+        if (failed.get()) {
+            // no further changeset is started once one of them failed
+            return null;
+        }
+        Database worker;
+        try {
+            worker = workers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+        try {
+            if (ChangeSetDependencies.readsHistory(changeSet)) {
+                // all the earlier changesets are recorded by now, the rows have to be written for the worker
+                flushHistory();
+                historyServices().getChangeLogService(worker).reset();
+            }
+            worker.setObjectQuotingStrategy(changeSet.getObjectQuotingStrategy());
+            // the scopes entered by the changeset are left on this thread's own stack
+            ChangeSet.ExecType execType = Scope.child(
+                Map.of(), () -> changeSet.execute(changeSet.getChangeLog(), null, worker));
+            // the changeset is recorded over the connection of the database, which then awaits its mutations
+            if (database instanceof ClickHouseDatabase clickHouseDatabase
+                    && worker instanceof ClickHouseDatabase clickHouseWorker) {
+                clickHouseDatabase.addMutatedTables(clickHouseWorker.takeMutatedTables());
+            }
+            return execType;
+        } catch (Exception e) {
+            failed.set(true);
+            throw new CompletionException(e);
+        } finally {
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Records the changeset which ran, the records are made one at a time in changelog order.
+     */
+    private ChangeSet.ExecType record(
+        ChangeSet changeSet, ChangeSet.RunStatus runStatus, ChangeSet.ExecType execType, AtomicBoolean failed
+    ) {
+        if (execType == null) {
+            return null;
+        }
+        if (execType == ChangeSet.ExecType.EXECUTED && runStatus != ChangeSet.RunStatus.NOT_RAN) {
+            execType = ChangeSet.ExecType.RERAN;
+        }
+        try {
+            // the changesets which did run are recorded even after a failure, so they are not run again
+            database.markChangeSetExecStatus(changeSet, execType);
+        } catch (DatabaseException e) {
+            failed.set(true);
+            throw new CompletionException(e);
+        }
+        getLogger().info("ChangeSet " + changeSet + " ran successfully");
+        return execType;
+    }
+
+    private void awaitResults(List<CompletableFuture<ChangeSet.ExecType>> recorded) throws LiquibaseException {
+        LiquibaseException failure = null;
+        for (CompletableFuture<ChangeSet.ExecType> record : recorded) {
+            try {
+                record.join();
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    // the earliest failure in changelog order is the one its dependents report as well
+                    failure = e.getCause() instanceof LiquibaseException liquibaseException
+                                  ? liquibaseException
+                                  : new LiquibaseException(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void flushHistory() throws DatabaseException {
+        if (historyServices().getChangeLogService(database)
+                instanceof ClickHouseChangeLogHistoryService historyService) {
+            historyService.flushPendingChangeSets();
+        }
+    }
+
+    private Database openWorker() throws DatabaseException {
+        Connection connection;
+        try {
+            connection = connections.call();
+        } catch (Exception e) {
+            throw new DatabaseException("Could not open a connection for the changesets", e);
+        }
+        Database worker = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(
+            new JdbcConnection(connection));
+        worker.setDefaultCatalogName(database.getDefaultCatalogName());
+        worker.setDefaultSchemaName(database.getDefaultSchemaName());
+        worker.setLiquibaseCatalogName(database.getLiquibaseCatalogName());
+        worker.setLiquibaseSchemaName(database.getLiquibaseSchemaName());
+        return worker;
+    }
+
+    private void closeWorkers(BlockingQueue<Database> workers) {
+        for (Database worker : workers) {
+            // the factories keep the services of every database they were asked for, their state is dropped
+            historyServices().getChangeLogService(worker).reset();
+            LockServiceFactory.getInstance().getLockService(worker).reset();
+            try {
+                worker.close();
+            } catch (DatabaseException e) {
+                getLogger().warning("Could not close a changeset connection", e);
+            }
+        }
+    }
+
+    private static ChangeLogHistoryServiceFactory historyServices() {
+        return Scope.getCurrentScope().getSingleton(ChangeLogHistoryServiceFactory.class);
+    }
+
+    private Logger getLogger() {
+        return Scope.getCurrentScope().getLog(ParallelChangeLogUpdate.class);
+    }
+}
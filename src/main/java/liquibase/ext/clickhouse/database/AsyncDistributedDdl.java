@@ -0,0 +1,175 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.database;
+
+import com.clickhouse.jdbc.ClickHouseConnection;
+import com.clickhouse.jdbc.ClickHouseStatement;
+import com.clickhouse.jdbc.ConnectionImpl;
+import com.clickhouse.jdbc.StatementImpl;
+import liquibase.Scope;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.Executor;
+import liquibase.logging.Logger;
+import liquibase.statement.core.RawParameterizedSqlStatement;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Submits {@code ON CLUSTER} DDL without waiting for the hosts, and later waits for the submitted tasks by
+ * polling {@code system.distributed_ddl_queue}. Every host runs its queue in order, so the DDLs of a changeset
+ * are pipelined and only waited for once, before the changeset is recorded. A task which failed on a host, or is
+ * still running on one when the timeout is over, fails the changeset.
+ * <p>
+ * The tasks are told apart by their queue entry, {@code query-<sequence number>}, which is ordered by Keeper and
+ * does not depend on the clocks of the hosts.
+ */
+public final class AsyncDistributedDdl {
+
+    private static final String TIMEOUT_SETTING = "distributed_ddl_task_timeout";
+    private static final Pattern DISTRIBUTED_DDL = Pattern.compile(
+        "^\\s*(?:CREATE|ALTER|DROP|RENAME|TRUNCATE|EXCHANGE|ATTACH|DETACH)\\b.*\\bON\\s+CLUSTER\\b",
+        Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final String clusterName;
+    private String awaitedEntry;
+    private boolean submitted;
+
+    private AsyncDistributedDdl(String clusterName, String awaitedEntry) {
+        this.clusterName = clusterName;
+        this.awaitedEntry = awaitedEntry;
+    }
+
+    static AsyncDistributedDdl start(String clusterName, Executor executor) throws DatabaseException {
+        getLogger().info("Submitting ON CLUSTER DDL to " + clusterName + " without waiting for the hosts");
+        return new AsyncDistributedDdl(clusterName, lastEntry(clusterName, executor));
+    }
+
+    static boolean isDistributedDdl(String sql) {
+        return DISTRIBUTED_DDL.matcher(sql).find();
+    }
+
+    /**
+     * Returns whether the driver of the connection can pass settings with a single statement.
+     */
+    static boolean canSubmit(Connection connection) throws DatabaseException {
+        try {
+            return connection.isWrapperFor(ConnectionImpl.class)
+                       || connection.isWrapperFor(ClickHouseConnection.class);
+        } catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    /**
+     * Executes the DDL with a zero {@code distributed_ddl_task_timeout}, which returns as soon as the task is
+     * queued. The setting is passed with the statement, as the HTTP connection keeps no session state.
+     */
+    synchronized void submit(Connection connection, String sql) throws DatabaseException {
+        try (Statement statement = connection.createStatement()) {
+            if (statement.isWrapperFor(StatementImpl.class)) {
+                statement.unwrap(StatementImpl.class).getLocalSettings().serverSetting(TIMEOUT_SETTING, "0");
+            } else {
+                statement.unwrap(ClickHouseStatement.class).getRequest().set(TIMEOUT_SETTING, "0");
+            }
+            getLogger().fine("Submitting " + sql);
+            statement.execute(sql);
+        } catch (SQLException e) {
+            throw new DatabaseException("Error submitting " + sql + ": " + e.getMessage(), e);
+        }
+        submitted = true;
+    }
+
+    /**
+     * Waits up to {@code timeoutSeconds} for the tasks submitted since the previous wait.
+     */
+    synchronized void await(Executor executor, int timeoutSeconds, int pollMillis) throws DatabaseException {
+        if (!submitted) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        while (true) {
+            List<Map<String, ?>> tasks = executor.queryForList(new RawParameterizedSqlStatement(
+                "SELECT entry AS ENTRY, host AS HOST, toString(status) AS STATUS, "
+                    + "exception_code AS EXCEPTION_CODE, exception_text AS EXCEPTION_TEXT "
+                    + "FROM system.distributed_ddl_queue "
+                    + "WHERE cluster = ? AND entry > ? ORDER BY entry, host",
+                clusterName, awaitedEntry
+            ));
+            List<Map<String, ?>> failed = tasks.stream()
+                                              .filter(AsyncDistributedDdl::isFailed)
+                                              .toList();
+            if (!failed.isEmpty()) {
+                throw new DatabaseException("Distributed DDL failed: " + describe(failed, "EXCEPTION_TEXT"));
+            }
+            List<Map<String, ?>> unfinished = tasks.stream()
+                                                  .filter(task -> !"Finished".equals(task.get("STATUS")))
+                                                  .toList();
+            if (unfinished.isEmpty()) {
+                getLogger().info(String.format("%d distributed DDL tasks finished on %s", tasks.size(),
+                    clusterName));
+                if (!tasks.isEmpty()) {
+                    awaitedEntry = String.valueOf(tasks.get(tasks.size() - 1).get("ENTRY"));
+                }
+                submitted = false;
+                return;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                throw new DatabaseException(String.format("Distributed DDL still running after %d seconds: %s",
+                    timeoutSeconds, describe(unfinished, "STATUS")));
+            }
+            getLogger().info(String.format("Waiting for %d of %d distributed DDL tasks on %s",
+                unfinished.size(), tasks.size(), clusterName));
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DatabaseException(e);
+            }
+        }
+    }
+
+    private static String lastEntry(String clusterName, Executor executor) throws DatabaseException {
+        // entries are zero padded, so they sort as their sequence numbers do
+        List<Map<String, ?>> rows = executor.queryForList(new RawParameterizedSqlStatement(
+            "SELECT max(entry) AS ENTRY FROM system.distributed_ddl_queue WHERE cluster = ?", clusterName));
+        return rows.isEmpty() ? "" : String.valueOf(rows.get(0).get("ENTRY"));
+    }
+
+    private static boolean isFailed(Map<String, ?> task) {
+        return task.get("EXCEPTION_CODE") instanceof Number code && code.intValue() != 0;
+    }
+
+    private static String describe(List<Map<String, ?>> tasks, String detail) {
+        return tasks.stream()
+                   .map(task -> task.get("ENTRY") + " on " + task.get("HOST") + " (" + task.get(detail) + ")")
+                   .collect(Collectors.joining(", "));
+    }
+
+    private static Logger getLogger() {
+        return Scope.getCurrentScope().getLog(AsyncDistributedDdl.class);
+    }
+}
@@ -0,0 +1,179 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.database;
+
+import com.clickhouse.client.api.Client;
+import com.clickhouse.client.api.insert.InsertResponse;
+import com.clickhouse.client.api.insert.InsertSettings;
+import com.clickhouse.data.ClickHouseFormat;
+import liquibase.Scope;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.Executor;
+import liquibase.ext.clickhouse.executor.InsertThrottle;
+import liquibase.ext.clickhouse.params.ExtensionOptions;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.logging.Logger;
+import liquibase.sqlgenerator.core.InsertGenerator;
+import liquibase.statement.core.InsertSetStatement;
+import liquibase.statement.core.InsertStatement;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Inserts the rows of {@code insert} and {@code loadData} changes in large batches, each streamed in a single
+ * request in the {@code Values} format through the client of the ClickHouse JDBC driver, or a client of its own
+ * with the legacy driver, with several batches sent at the same time. Every batch makes one part instead of one
+ * part per row or per small batch, and the batches wait for the merges of the table when it has too many parts.
+ */
+final class BulkInsert {
+
+    private final ClickHouseDatabase database;
+    private final List<InsertStatement> rows;
+    private final InsertGenerator insertGenerator = new InsertGenerator();
+
+    BulkInsert(ClickHouseDatabase database, List<InsertStatement> rows) {
+        this.database = database;
+        this.rows = rows;
+    }
+
+    void run(Executor executor) throws DatabaseException {
+        // the table may have been created or altered by ON CLUSTER DDL which has not reached this host yet
+        database.awaitAsyncDdl(executor);
+        ExtensionOptions options = ParamsLoader.getExtensionOptions();
+        List<List<InsertStatement>> batches = batches(options.insertBatchRows());
+        InsertThrottle throttle = executor.updatesDatabase() && InsertThrottle.isEnabled(options)
+                                      ? new InsertThrottle(database, executor, rows.get(0).getCatalogName(),
+                                          rows.get(0).getTableName())
+                                      : null;
+        if (!executor.updatesDatabase() || !database.canOpenClient()) {
+            // e.g. updateSQL, the batches are written as multi-row INSERT statements
+            for (List<InsertStatement> batch : batches) {
+                if (throttle != null) {
+                    throttle.awaitCapacity();
+                }
+                InsertSetStatement statement = new InsertSetStatement(
+                    batch.get(0).getCatalogName(), batch.get(0).getSchemaName(), batch.get(0).getTableName(),
+                    batch.size());
+                batch.forEach(statement::addInsertStatement);
+                executor.execute(statement);
+            }
+            return;
+        }
+
+        Client connectionClient = database.getClient();
+        Deque<CompletableFuture<InsertResponse>> inFlight = new ArrayDeque<>();
+        // a connection of the legacy driver has no client of the new API, the batches get one of their own
+        try (Client ownClient = connectionClient == null ? database.openClient() : null) {
+            Client client = connectionClient != null ? connectionClient : ownClient;
+            for (List<InsertStatement> batch : batches) {
+                // a table under merge pressure gets one batch at a time, after the previous ones are written
+                int senders = throttle != null && throttle.awaitCapacity() ? 1 : options.insertParallelSenders();
+                while (inFlight.size() >= senders) {
+                    await(inFlight.removeFirst());
+                }
+                inFlight.addLast(send(client, batch));
+            }
+            while (!inFlight.isEmpty()) {
+                await(inFlight.removeFirst());
+            }
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
+        }
+        getLogger().info(String.format("Inserted %d rows into %s in %d batches", rows.size(),
+            rows.get(0).getTableName(), batches.size()));
+    }
+
+    /**
+     * Splits the rows into batches of at most the given size, of consecutive rows with the same columns.
+     */
+    List<List<InsertStatement>> batches(int batchRows) {
+        List<List<InsertStatement>> batches = new ArrayList<>();
+        List<InsertStatement> batch = new ArrayList<>();
+        for (InsertStatement row : rows) {
+            if (!batch.isEmpty() && (batch.size() >= batchRows || !hasSameColumns(batch.get(0), row))) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+            batch.add(row);
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private CompletableFuture<InsertResponse> send(Client client, List<InsertStatement> batch) {
+        InsertStatement first = batch.get(0);
+        String tableName = database.escapeTableName(
+            first.getCatalogName(), first.getSchemaName(), first.getTableName());
+        List<String> columns = first.getColumnValues().keySet().stream()
+                                   .map(column -> database.escapeColumnName(
+                                       first.getCatalogName(), first.getSchemaName(), first.getTableName(), column))
+                                   .toList();
+        InsertSettings settings = new InsertSettings();
+        database.runningChangeSettings().forEach(settings::serverSetting);
+        String token = database.nextDeduplicationToken();
+        if (token != null) {
+            settings.setDeduplicationToken(token);
+        }
+        return client.insert(tableName, columns, out -> writeValues(out, batch), ClickHouseFormat.Values, settings);
+    }
+
+    private void writeValues(OutputStream out, List<InsertStatement> batch) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        StringBuilder row = new StringBuilder();
+        for (InsertStatement statement : batch) {
+            row.setLength(0);
+            insertGenerator.generateValues(row, statement, database);
+            writer.write(row.toString());
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    private static void await(CompletableFuture<InsertResponse> future) throws DatabaseException {
+        InsertResponse response;
+        try {
+            response = future.join();
+        } catch (CompletionException e) {
+            throw new DatabaseException(e.getCause());
+        }
+        response.close();
+    }
+
+    private static boolean hasSameColumns(InsertStatement row, InsertStatement other) {
+        return List.copyOf(row.getColumnValues().keySet()).equals(List.copyOf(other.getColumnValues().keySet()));
+    }
+
+    private static Logger getLogger() {
+        return Scope.getCurrentScope().getLog(BulkInsert.class);
+    }
+}
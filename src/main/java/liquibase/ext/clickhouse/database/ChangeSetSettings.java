@@ -0,0 +1,70 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.database;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.exception.LiquibaseException;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Query settings of the statements of a changeset, given by its {@value #SETTINGS} attribute as comma-separated
+ * {@code name=value} pairs, e.g. {@code ch:settings="max_threads=2, priority=5, workload='backfill'"}.
+ */
+public final class ChangeSetSettings {
+
+    static final String SETTINGS = "settings";
+
+    private static final Pattern SETTING = Pattern.compile(
+        "\\G\\s*(\\w+)\\s*=\\s*(?:'((?:[^'\\\\]|\\\\.)*)'|([^,\\s']+))\\s*(?:,|$)");
+
+    private ChangeSetSettings() {
+    }
+
+    /**
+     * Returns the settings of the changeset by name, with unquoted values, in the order of the attribute.
+     *
+     * @throws LiquibaseException if the attribute is not a list of {@code name=value} pairs
+     */
+    public static Map<String, String> of(ChangeSet changeSet) throws LiquibaseException {
+        Object declared = changeSet == null ? null : changeSet.getAttribute(SETTINGS);
+        if (declared == null || declared.toString().isBlank()) {
+            return Collections.emptyMap();
+        }
+        String settings = declared.toString().trim();
+        Map<String, String> values = new LinkedHashMap<>();
+        Matcher matcher = SETTING.matcher(settings);
+        int end = 0;
+        while (end < settings.length() && matcher.find()) {
+            String quoted = matcher.group(2);
+            values.put(matcher.group(1), quoted == null ? matcher.group(3) : quoted.replaceAll("\\\\(.)", "$1"));
+            end = matcher.end();
+        }
+        if (end < settings.length()) {
+            throw new LiquibaseException(String.format(
+                "Invalid %s attribute of changeset %s, expected name=value pairs: %s", SETTINGS, changeSet, settings));
+        }
+        return Collections.unmodifiableMap(values);
+    }
+}
@@ -0,0 +1,286 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.database;
+
+import liquibase.Scope;
+import liquibase.change.Change;
+import liquibase.change.core.DeleteDataChange;
+import liquibase.change.core.InsertDataChange;
+import liquibase.change.core.LoadDataChange;
+import liquibase.change.core.LoadUpdateDataChange;
+import liquibase.change.core.UpdateDataChange;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.exception.LiquibaseException;
+import liquibase.executor.Executor;
+import liquibase.executor.ExecutorService;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.ext.clickhouse.statement.CoalescedUpdateStatement;
+import liquibase.ext.clickhouse.statement.PartitionedDeleteStatement;
+import liquibase.sql.visitor.SqlVisitor;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.DeleteStatement;
+import liquibase.statement.core.InsertSetStatement;
+import liquibase.statement.core.InsertStatement;
+import liquibase.statement.core.UpdateStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Picks how the changes of a {@link ClickHouseDatabase} are run: deletes limited to the partition of their
+ * changeset, inserts sent as bulk inserts, updates run one batch of partitions at a time or coalesced into a single
+ * mutation, and everything else the way Liquibase runs it. Holds the state of the running change, i.e. the changes
+ * already run together with an earlier one and the deduplication tokens and query settings of its changeset.
+ */
+final class ClickHouseChangeDispatcher {
+
+    private final ClickHouseDatabase database;
+    private final List<Change> coalescedChanges = new ArrayList<>();
+    private DeduplicationTokens deduplicationTokens;
+    private Map<String, String> changeSetSettings = Map.of();
+    private boolean runningChange;
+
+    ClickHouseChangeDispatcher(ClickHouseDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Returns the {@code insert_deduplication_token} of the next INSERT of the running change, or {@code null} if
+     * its inserts are not deduplicated.
+     */
+    String nextDeduplicationToken() {
+        return runningChange && deduplicationTokens != null ? deduplicationTokens.next() : null;
+    }
+
+    /**
+     * Returns the query settings given to the statements of the running change by the {@code settings} attribute of
+     * its changeset, by name.
+     */
+    Map<String, String> runningChangeSettings() {
+        return runningChange ? changeSetSettings : Map.of();
+    }
+
+    /**
+     * Runs the statements of the change, with the deduplication tokens and query settings of its changeset.
+     */
+    void execute(Change change, DatabaseChangeLog changeLog, List<SqlVisitor> sqlVisitors)
+        throws LiquibaseException {
+        if (deduplicationTokens == null || !deduplicationTokens.belongsTo(change.getChangeSet())) {
+            deduplicationTokens = DeduplicationTokens.of(change.getChangeSet());
+        }
+        changeSetSettings = ChangeSetSettings.of(change.getChangeSet());
+        runningChange = true;
+        try {
+            executeChange(change, changeLog, sqlVisitors);
+        } finally {
+            runningChange = false;
+        }
+    }
+
+    private void executeChange(Change change, DatabaseChangeLog changeLog, List<SqlVisitor> sqlVisitors)
+        throws LiquibaseException {
+        if (coalescedChanges.removeIf(coalesced -> coalesced == change)) {
+            // already run together with an earlier update
+            return;
+        }
+        Object partition = change instanceof DeleteDataChange && change.getChangeSet() != null
+                               ? change.getChangeSet().getAttribute(PartitionedDeleteStatement.PARTITION)
+                               : null;
+        if (partition != null && !partition.toString().isBlank()) {
+            // deletes of a changeset with a partition attribute only scan that partition
+            database.execute(inPartition(change.generateStatements(database), partition.toString()), sqlVisitors);
+            return;
+        }
+        List<InsertStatement> rows = bulkInsertRows(change, sqlVisitors);
+        if (!rows.isEmpty()) {
+            try {
+                new BulkInsert(database, rows).run(getJdbcExecutor());
+            } catch (LiquibaseException | RuntimeException e) {
+                coalescedChanges.clear();
+                throw e;
+            }
+            return;
+        }
+        if (runsPartitionedMutation(change, sqlVisitors)) {
+            new PartitionedMutation(database, change.getChangeSet(), updateStatement(change)).run(getJdbcExecutor());
+            return;
+        }
+        List<UpdateStatement> updates = coalescableUpdates(change, sqlVisitors);
+        if (updates.size() < 2) {
+            database.executeStatementsAsLiquibase(change, changeLog, sqlVisitors);
+            return;
+        }
+        try {
+            database.execute(new SqlStatement[] {new CoalescedUpdateStatement(updates)}, sqlVisitors);
+        } catch (LiquibaseException | RuntimeException e) {
+            coalescedChanges.clear();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the rows inserted by a loadData change, or by an insert change and the insert changes following it
+     * in its changeset on the same table, marking the following changes as run. Returns no rows if the change is
+     * left to Liquibase.
+     */
+    private List<InsertStatement> bulkInsertRows(Change change, List<SqlVisitor> sqlVisitors) {
+        if (ParamsLoader.getExtensionOptions().insertBatchRows() <= 0
+                || (sqlVisitors != null && !sqlVisitors.isEmpty())) {
+            return List.of();
+        }
+        if (change instanceof LoadDataChange loadData && !(change instanceof LoadUpdateDataChange)) {
+            Boolean usePreparedStatements = loadData.getUsePreparedStatements();
+            try {
+                // restored right away, the attribute is part of the checksum of the change
+                loadData.setUsePreparedStatements(false);
+                return insertStatements(loadData.generateStatements(database));
+            } finally {
+                loadData.setUsePreparedStatements(usePreparedStatements);
+            }
+        }
+        if (!(change instanceof InsertDataChange) || change.getChangeSet() == null) {
+            return List.of();
+        }
+        List<Change> changes = change.getChangeSet().getChanges();
+        int start = indexOf(changes, change);
+        List<InsertStatement> rows = new ArrayList<>(insertStatements(change.generateStatements(database)));
+        List<Change> following = new ArrayList<>();
+        for (int i = start + 1; i < changes.size() && !rows.isEmpty(); i++) {
+            if (!(changes.get(i) instanceof InsertDataChange)) {
+                break;
+            }
+            List<InsertStatement> next = insertStatements(changes.get(i).generateStatements(database));
+            if (next.isEmpty() || !isSameTable(rows.get(0), next.get(0))) {
+                break;
+            }
+            rows.addAll(next);
+            following.add(changes.get(i));
+        }
+        coalescedChanges.addAll(following);
+        return rows;
+    }
+
+    /**
+     * Returns the rows of the statements, or none if one of them is not a plain insert.
+     */
+    private static List<InsertStatement> insertStatements(SqlStatement[] statements) {
+        List<InsertStatement> rows = new ArrayList<>();
+        for (SqlStatement statement : statements) {
+            if (statement instanceof InsertSetStatement insertSet) {
+                rows.addAll(insertSet.getStatements());
+            } else if (statement instanceof InsertStatement insert) {
+                rows.add(insert);
+            } else {
+                return List.of();
+            }
+        }
+        return rows;
+    }
+
+    private static boolean isSameTable(InsertStatement insert, InsertStatement other) {
+        return Objects.equals(insert.getCatalogName(), other.getCatalogName())
+                   && Objects.equals(insert.getSchemaName(), other.getSchemaName())
+                   && Objects.equals(insert.getTableName(), other.getTableName());
+    }
+
+    /**
+     * Tells whether the change is an update run one batch of partitions at a time.
+     */
+    private boolean runsPartitionedMutation(Change change, List<SqlVisitor> sqlVisitors) {
+        if (ParamsLoader.getExtensionOptions().mutationPartitionsPerBatch() <= 0
+                || (sqlVisitors != null && !sqlVisitors.isEmpty())
+                || change.getChangeSet() == null
+                || !getJdbcExecutor().updatesDatabase()) {
+            return false;
+        }
+        UpdateStatement update = updateStatement(change);
+        return update != null && !database.usesLightweightUpdates(update);
+    }
+
+    private Executor getJdbcExecutor() {
+        return Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", database);
+    }
+
+    private static SqlStatement[] inPartition(SqlStatement[] statements, String partition) {
+        SqlStatement[] partitioned = new SqlStatement[statements.length];
+        for (int i = 0; i < statements.length; i++) {
+            partitioned[i] = statements[i] instanceof DeleteStatement delete
+                                 ? new PartitionedDeleteStatement(delete, partition)
+                                 : statements[i];
+        }
+        return partitioned;
+    }
+
+    /**
+     * Returns the update statements of the change and of the update changes following it in its changeset on the
+     * same table, marking the following changes as run.
+     */
+    private List<UpdateStatement> coalescableUpdates(Change change, List<SqlVisitor> sqlVisitors) {
+        if (!ParamsLoader.getExtensionOptions().coalesceUpdates()
+                || ParamsLoader.getExtensionOptions().mutationPartitionsPerBatch() > 0
+                || (sqlVisitors != null && !sqlVisitors.isEmpty())
+                || change.getChangeSet() == null) {
+            return List.of();
+        }
+        List<Change> changes = change.getChangeSet().getChanges();
+        int start = indexOf(changes, change);
+        List<UpdateStatement> updates = new ArrayList<>();
+        List<Change> following = new ArrayList<>();
+        for (int i = start; i < changes.size(); i++) {
+            UpdateStatement update = updateStatement(changes.get(i));
+            if (update == null || (!updates.isEmpty() && !isSameTable(updates.get(0), update))) {
+                break;
+            }
+            if (updates.isEmpty() && database.usesLightweightUpdates(update)) {
+                return List.of();
+            }
+            updates.add(update);
+            if (i > start) {
+                following.add(changes.get(i));
+            }
+        }
+        coalescedChanges.addAll(following);
+        return updates;
+    }
+
+    private static int indexOf(List<Change> changes, Change change) {
+        int index = 0;
+        while (index < changes.size() && changes.get(index) != change) {
+            index++;
+        }
+        return index;
+    }
+
+    private UpdateStatement updateStatement(Change change) {
+        if (!(change instanceof UpdateDataChange)) {
+            return null;
+        }
+        SqlStatement[] statements = change.generateStatements(database);
+        return statements.length == 1 && statements[0] instanceof UpdateStatement update ? update : null;
+    }
+
+    private static boolean isSameTable(UpdateStatement update, UpdateStatement other) {
+        return Objects.equals(update.getCatalogName(), other.getCatalogName())
+                   && Objects.equals(update.getSchemaName(), other.getSchemaName())
+                   && Objects.equals(update.getTableName(), other.getTableName());
+    }
+}
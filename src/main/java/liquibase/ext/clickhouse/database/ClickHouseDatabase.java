@@ -20,13 +20,36 @@
  */
 package liquibase.ext.clickhouse.database;
 
+import com.clickhouse.client.ClickHouseCredentials;
+import com.clickhouse.client.api.Client;
+import com.clickhouse.jdbc.ClickHouseConnection;
 import com.clickhouse.jdbc.ClickHouseDriver;
+import com.clickhouse.jdbc.ConnectionImpl;
+import liquibase.Scope;
+import liquibase.change.Change;
+import liquibase.changelog.DatabaseChangeLog;
 import liquibase.database.AbstractJdbcDatabase;
 import liquibase.database.DatabaseConnection;
+import liquibase.database.jvm.JdbcConnection;
 import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
+import liquibase.executor.Executor;
+import liquibase.ext.clickhouse.params.ExtensionOptions;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.sql.visitor.SqlVisitor;
+import liquibase.statement.core.UpdateStatement;
 
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ClickHouseDatabase extends AbstractJdbcDatabase {
 
@@ -38,6 +61,13 @@ public class ClickHouseDatabase extends AbstractJdbcDatabase {
             + new SimpleDateFormat("yyyy.MM.dd HH:mm:ss.SSS").format(new Date())
             + "',3)";
 
+    private LiquibaseTables liquibaseTables;
+    private AsyncDistributedDdl asyncDdl;
+    private ServerFeatures serverFeatures = ServerFeatures.NONE;
+    private volatile String lostChangeLogLock;
+    private final Set<String> mutatedTables = ConcurrentHashMap.newKeySet();
+    private final ClickHouseChangeDispatcher changeDispatcher = new ClickHouseChangeDispatcher(this);
+
     public ClickHouseDatabase() {
         super();
         this.setCurrentDateTimeFunction(CURRENT_DATE_TIME_FUNCTION);
@@ -97,4 +127,261 @@ public class ClickHouseDatabase extends AbstractJdbcDatabase {
     public boolean supportsDDLInTransaction() {
         return false;
     }
+
+    @Override
+    public void setConnection(DatabaseConnection conn) {
+        super.setConnection(conn);
+        serverFeatures = conn instanceof JdbcConnection jdbcConnection
+                             ? ServerFeatures.detect(jdbcConnection)
+                             : ServerFeatures.NONE;
+    }
+
+    /**
+     * Returns the client of the ClickHouse JDBC connection, used to stream inserts, or {@code null} if the
+     * connection is not one.
+     */
+    public Client getClient() {
+        try {
+            if (getConnection() instanceof JdbcConnection connection
+                    && connection.getUnderlyingConnection().isWrapperFor(ConnectionImpl.class)) {
+                return connection.getUnderlyingConnection().unwrap(ConnectionImpl.class).getClient();
+            }
+        } catch (SQLException e) {
+            Scope.getCurrentScope().getLog(ClickHouseDatabase.class)
+                .fine("Could not get the ClickHouse client: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Tells whether {@link #openClient()} can open a client to the server of the connection, i.e. whether the
+     * connection is one of the ClickHouse JDBC driver.
+     */
+    public boolean canOpenClient() {
+        try {
+            return getConnection() instanceof JdbcConnection connection
+                       && (connection.getUnderlyingConnection().isWrapperFor(ConnectionImpl.class)
+                               || connection.getUnderlyingConnection().isWrapperFor(ClickHouseConnection.class));
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens a client of its own to the server of the connection, for queries run beside the connection, e.g. from
+     * another thread. The caller closes it.
+     */
+    public Client openClient() throws DatabaseException {
+        if (!(getConnection() instanceof JdbcConnection connection)) {
+            throw new DatabaseException("Cannot open a ClickHouse client without a JDBC connection");
+        }
+        try {
+            Connection underlying = connection.getUnderlyingConnection();
+            if (underlying.isWrapperFor(ConnectionImpl.class)) {
+                // the same way the JDBC connection builds its own client
+                return underlying.unwrap(ConnectionImpl.class)
+                           .getJdbcConfig()
+                           .applyClientProperties(new Client.Builder())
+                           .build();
+            }
+            if (underlying.isWrapperFor(ClickHouseConnection.class)) {
+                ClickHouseConnection legacy = underlying.unwrap(ClickHouseConnection.class);
+                // jdbc:clickhouse:<protocol>://<host>:<port>/<database>
+                URI uri = URI.create(legacy.getUri().getSchemeSpecificPart().replaceFirst("^clickhouse:", ""));
+                ClickHouseCredentials credentials = legacy.getConfig().getDefaultCredentials();
+                var builder = new Client.Builder()
+                                  .addEndpoint(uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort())
+                                  .setDefaultDatabase(legacy.getCurrentDatabase());
+                if (credentials.useAccessToken()) {
+                    builder.setAccessToken(credentials.getAccessToken());
+                } else {
+                    builder.setUsername(credentials.getUserName()).setPassword(credentials.getPassword());
+                }
+                return builder.build();
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            throw new DatabaseException("Could not open a ClickHouse client", e);
+        }
+        throw new DatabaseException("Cannot open a ClickHouse client for " + connection.getURL());
+    }
+
+    public ServerFeatures getServerFeatures() {
+        return serverFeatures;
+    }
+
+    /**
+     * Tells whether updates are run as lightweight {@code UPDATE} statements, which write patch parts, instead of
+     * mutations rewriting the parts.
+     */
+    public boolean usesLightweightUpdates() {
+        return serverFeatures.lightweightUpdate() && ParamsLoader.getExtensionOptions().lightweightUpdates();
+    }
+
+    /**
+     * Tells whether the update is run as a lightweight {@code UPDATE} statement, which also needs the block number
+     * and offset columns on its table. The table settings are read from the server each time, as the table may
+     * have been created or altered since.
+     */
+    public boolean usesLightweightUpdates(UpdateStatement update) {
+        return usesLightweightUpdates()
+                   && getTableFeatures(update.getCatalogName(), update.getTableName()).lightweightUpdate();
+    }
+
+    /**
+     * Returns the features of a table, read from the server each time, or none without a JDBC connection.
+     *
+     * @param catalogName the database of the table, or {@code null} for the default one
+     */
+    public TableFeatures getTableFeatures(String catalogName, String tableName) {
+        return getConnection() instanceof JdbcConnection connection
+                   ? TableFeatures.detect(connection,
+                       Objects.requireNonNullElseGet(catalogName, this::getDefaultCatalogName), tableName)
+                   : TableFeatures.NONE;
+    }
+
+    /**
+     * Tells whether deletes are run as lightweight {@code DELETE FROM} statements, which mask the deleted rows,
+     * instead of mutations rewriting the parts.
+     */
+    public boolean usesLightweightDeletes() {
+        return serverFeatures.lightweightDelete() && ParamsLoader.getExtensionOptions().lightweightDeletes();
+    }
+
+    /**
+     * Returns the {@code insert_deduplication_token} of the next INSERT of the running change, or {@code null} if
+     * its inserts are not deduplicated.
+     */
+    public String nextDeduplicationToken() {
+        return changeDispatcher.nextDeduplicationToken();
+    }
+
+    /**
+     * Returns the query settings given to the statements of the running change by the {@code settings} attribute of
+     * its changeset, by name.
+     */
+    public Map<String, String> runningChangeSettings() {
+        return changeDispatcher.runningChangeSettings();
+    }
+
+    @Override
+    public void executeStatements(Change change, DatabaseChangeLog changeLog, List<SqlVisitor> sqlVisitors)
+        throws LiquibaseException {
+        changeDispatcher.execute(change, changeLog, sqlVisitors);
+    }
+
+    /**
+     * Runs the statements of the change the way Liquibase does, for the changes the dispatcher leaves alone.
+     */
+    void executeStatementsAsLiquibase(Change change, DatabaseChangeLog changeLog, List<SqlVisitor> sqlVisitors)
+        throws LiquibaseException {
+        super.executeStatements(change, changeLog, sqlVisitors);
+    }
+
+    /**
+     * Records that the changelog lock of the deployment was lost, e.g. taken over by another process once its lease
+     * ran out, so that {@link #checkChangeLogLock()} fails from then on. {@code null} clears it.
+     */
+    public void setLostChangeLogLock(String reason) {
+        lostChangeLogLock = reason;
+    }
+
+    /**
+     * Fails if the changelog lock of the deployment was lost, as another process may be deploying meanwhile.
+     */
+    public void checkChangeLogLock() throws DatabaseException {
+        String reason = lostChangeLogLock;
+        if (reason != null) {
+            throw new DatabaseException(reason);
+        }
+    }
+
+    /**
+     * Remembers the tables the queries may create mutations of, until {@link #takeMutatedTables()}.
+     */
+    public void recordMutatedTables(String[] queries) {
+        for (String query : queries) {
+            MutationTracker.mutatedTable(query, this).ifPresent(mutatedTables::add);
+        }
+    }
+
+    /**
+     * Remembers tables mutated over another connection, e.g. the one a changeset ran on.
+     */
+    public void addMutatedTables(Set<String> tables) {
+        mutatedTables.addAll(tables);
+    }
+
+    /**
+     * Returns the tables recorded since the previous call, qualified with their database, and forgets them.
+     */
+    public Set<String> takeMutatedTables() {
+        Set<String> tables = Set.copyOf(mutatedTables);
+        mutatedTables.removeAll(tables);
+        return tables;
+    }
+
+    /**
+     * Returns the state of the Liquibase tables, read once and cached until {@link #resetLiquibaseTables()}.
+     */
+    public LiquibaseTables getLiquibaseTables(Executor executor) throws DatabaseException {
+        if (liquibaseTables == null) {
+            liquibaseTables = LiquibaseTables.load(this, executor);
+        }
+        return liquibaseTables;
+    }
+
+    public void resetLiquibaseTables() {
+        liquibaseTables = null;
+    }
+
+    /**
+     * Submits the {@code ON CLUSTER} DDL of the deployment without waiting for the hosts, until
+     * {@link #finishAsyncDdl(Executor)}.
+     */
+    public void startAsyncDdl(String clusterName, Executor executor) throws DatabaseException {
+        if (asyncDdl == null) {
+            asyncDdl = AsyncDistributedDdl.start(clusterName, executor);
+        }
+    }
+
+    /**
+     * Submits the queries without waiting for the hosts, if asynchronous DDL is on and all of them are
+     * {@code ON CLUSTER} DDL.
+     *
+     * @return false if the queries have to be executed as usual
+     */
+    public boolean submitAsyncDdl(String[] queries) throws DatabaseException {
+        if (asyncDdl == null || queries.length == 0
+                || !Arrays.stream(queries).allMatch(AsyncDistributedDdl::isDistributedDdl)
+                || !(getConnection() instanceof JdbcConnection connection)
+                || !AsyncDistributedDdl.canSubmit(connection.getUnderlyingConnection())) {
+            return false;
+        }
+        for (String query : queries) {
+            asyncDdl.submit(connection.getUnderlyingConnection(), query);
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the DDL submitted since the previous wait, failing if it failed or timed out on a host.
+     */
+    public void awaitAsyncDdl(Executor executor) throws DatabaseException {
+        if (asyncDdl == null) {
+            return;
+        }
+        ExtensionOptions options = ParamsLoader.getExtensionOptions();
+        asyncDdl.await(executor, options.ddlTimeoutSeconds(), options.ddlPollMillis());
+    }
+
+    /**
+     * Waits for the remaining DDL and goes back to synchronous DDL.
+     */
+    public void finishAsyncDdl(Executor executor) throws DatabaseException {
+        try {
+            awaitAsyncDdl(executor);
+        } finally {
+            asyncDdl = null;
+        }
+    }
 }
@@ -0,0 +1,64 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.database;
+
+import liquibase.ChecksumVersion;
+import liquibase.changelog.ChangeSet;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.util.MD5Util;
+
+/**
+ * Tokens of the INSERT statements of a changeset. A token is derived from the file, id, author and checksum of the
+ * changeset and from the ordinal of the INSERT in the changeset, so the same changeset run again sends the same
+ * tokens and the blocks it already inserted are dropped as duplicates.
+ */
+final class DeduplicationTokens {
+
+    private final ChangeSet changeSet;
+    private final String prefix;
+    private int ordinal;
+
+    private DeduplicationTokens(ChangeSet changeSet, String prefix) {
+        this.changeSet = changeSet;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Returns the tokens of the given changeset, or {@code null} if its inserts are not deduplicated. Changesets
+     * which run always insert their rows again on purpose.
+     */
+    static DeduplicationTokens of(ChangeSet changeSet) {
+        if (!ParamsLoader.getExtensionOptions().insertDeduplicationTokens()
+                || changeSet == null || changeSet.isAlwaysRun()) {
+            return null;
+        }
+        String checkSum = changeSet.generateCheckSum(ChecksumVersion.latest()).toString();
+        return new DeduplicationTokens(changeSet, MD5Util.computeMD5(
+            changeSet.getFilePath() + "::" + changeSet.getId() + "::" + changeSet.getAuthor() + "::" + checkSum));
+    }
+
+    boolean belongsTo(ChangeSet other) {
+        return changeSet == other;
+    }
+
+    String next() {
+        return prefix + "_" + ordinal++;
+    }
+}
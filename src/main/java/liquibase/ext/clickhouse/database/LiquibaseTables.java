@@ -0,0 +1,76 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.database;
+
+import liquibase.database.Database;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.Executor;
+import liquibase.statement.core.RawParameterizedSqlStatement;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Existence, engine and size of the DATABASECHANGELOG and DATABASECHANGELOGLOCK tables, read with a single
+ * {@code system.tables} query.
+ */
+public final class LiquibaseTables {
+
+    public record Table(String engine, Long totalRows) {
+    }
+
+    private final Database database;
+    private final Map<String, Table> tables;
+
+    private LiquibaseTables(Database database, Map<String, Table> tables) {
+        this.database = database;
+        this.tables = tables;
+    }
+
+    static LiquibaseTables load(Database database, Executor executor) throws DatabaseException {
+        var statement = new RawParameterizedSqlStatement(
+            "SELECT name AS NAME, engine AS ENGINE, total_rows AS TOTAL_ROWS FROM system.tables "
+                + "WHERE database = ? AND name IN (?, ?)",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogTableName(),
+            database.getDatabaseChangeLogLockTableName()
+        );
+        List<Map<String, ?>> rows = executor.queryForList(statement);
+        Map<String, Table> tables = new HashMap<>();
+        for (Map<String, ?> row : rows) {
+            Object totalRows = row.get("TOTAL_ROWS");
+            tables.put(
+                (String) row.get("NAME"),
+                new Table((String) row.get("ENGINE"), totalRows == null ? null : ((Number) totalRows).longValue())
+            );
+        }
+        return new LiquibaseTables(database, tables);
+    }
+
+    public Optional<Table> changeLogTable() {
+        return Optional.ofNullable(tables.get(database.getDatabaseChangeLogTableName()));
+    }
+
+    public Optional<Table> changeLogLockTable() {
+        return Optional.ofNullable(tables.get(database.getDatabaseChangeLogLockTableName()));
+    }
+}
@@ -0,0 +1,183 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.database;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.Executor;
+import liquibase.logging.Logger;
+import liquibase.statement.core.RawParameterizedSqlStatement;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static liquibase.ext.clickhouse.sqlgenerator.SqlGeneratorUtil.systemTable;
+
+/**
+ * Waits for the mutations issued since the previous wait by reading {@code system.mutations}, from every replica
+ * in cluster mode. ClickHouse does not hand the id of a mutation to the client, but the ids of the mutations of a
+ * table are numbered in order, {@code mutation_<block>.txt} or {@code <sequence number>} for replicated tables, so
+ * the new mutations are the ones numbered above the last mutation of their table seen at the previous wait. This
+ * does not depend on the clocks of the client or the replicas. The statements themselves do not wait, which lets
+ * the mutations of a changeset run concurrently, and all of them are polled together with a single query.
+ */
+public final class MutationTracker {
+
+    private static final String MUTATION_NUMBER = "toUInt64OrZero(extract(mutation_id, '[0-9]+'))";
+    private static final Pattern MUTATING_STATEMENT = Pattern.compile(
+        "^\\s*(?:ALTER\\s+TABLE|DELETE\\s+FROM|UPDATE)\\s+(\\S+)", Pattern.CASE_INSENSITIVE);
+
+    private Map<String, Long> lastMutations;
+
+    /**
+     * Starts tracking the mutations created from now on, unless the tracking already started.
+     */
+    public void start(Executor executor) throws DatabaseException {
+        if (lastMutations == null) {
+            lastMutations = lastMutations(executor);
+        }
+    }
+
+    /**
+     * Returns the table the SQL may create mutations of, qualified with its database. Any {@code ALTER TABLE} is
+     * taken, as besides updates and deletes dropping, modifying or materializing a column mutates the table too.
+     */
+    public static Optional<String> mutatedTable(String sql, Database database) {
+        Matcher matcher = MUTATING_STATEMENT.matcher(sql);
+        if (!matcher.find()) {
+            return Optional.empty();
+        }
+        List<String> parts = List.of(matcher.group(1).replace("`", "").replace("\"", "").split("\\.", 2));
+        return Optional.of(parts.size() == 2
+                               ? parts.get(0) + "." + parts.get(1)
+                               : database.getDefaultCatalogName() + "." + parts.get(0));
+    }
+
+    /**
+     * Waits until the mutations created since the tracking started are done on the given tables, qualified with
+     * their database, then tracks the mutations created from now on. Fails as soon as one of the mutations
+     * reports a failure. The mutations of other tables are not waited for.
+     */
+    public void await(Executor executor, Set<String> tables, int timeoutSeconds, int pollMillis)
+        throws DatabaseException {
+        if (lastMutations == null) {
+            start(executor);
+            return;
+        }
+        Map<String, Long> next = lastMutations(executor);
+        if (tables.isEmpty()) {
+            lastMutations = next;
+            return;
+        }
+        var statement = pendingMutations(tables);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        List<Map<String, ?>> pending = newMutations(executor.queryForList(statement));
+        while (!pending.isEmpty()) {
+            List<Map<String, ?>> failed = pending.stream()
+                                              .filter(mutation -> !failReason(mutation).isEmpty())
+                                              .toList();
+            if (!failed.isEmpty()) {
+                // a failing mutation is retried forever, waiting for it would only delay the error
+                throw new DatabaseException("Mutations failed: " + describe(failed));
+            }
+            long partsToDo = pending.stream()
+                                 .mapToLong(mutation -> ((Number) mutation.get("PARTS_TO_DO")).longValue())
+                                 .sum();
+            if (System.currentTimeMillis() >= deadline) {
+                throw new DatabaseException(String.format("Mutations not done after %d seconds: %s", timeoutSeconds,
+                    describe(pending)));
+            }
+            getLogger().info(String.format("Waiting for %d mutations, %d parts to do: %s", pending.size(),
+                partsToDo, describe(pending)));
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DatabaseException(e);
+            }
+            pending = newMutations(executor.queryForList(statement));
+        }
+        lastMutations = next;
+    }
+
+    private Map<String, Long> lastMutations(Executor executor) throws DatabaseException {
+        List<Map<String, ?>> rows = executor.queryForList(new RawParameterizedSqlStatement(
+            "SELECT concat(database, '.', table) AS TABLE_NAME, max(" + MUTATION_NUMBER + ") AS MUTATION_NUMBER "
+                + "FROM " + systemTable("mutations") + " GROUP BY database, table"
+        ));
+        Map<String, Long> last = new HashMap<>();
+        for (Map<String, ?> row : rows) {
+            last.put((String) row.get("TABLE_NAME"), ((Number) row.get("MUTATION_NUMBER")).longValue());
+        }
+        return last;
+    }
+
+    private List<Map<String, ?>> newMutations(List<Map<String, ?>> mutations) {
+        return mutations.stream()
+                   .filter(mutation -> ((Number) mutation.get("MUTATION_NUMBER")).longValue()
+                                           > lastMutations.getOrDefault(
+                                               mutation.get("DATABASE") + "." + mutation.get("TABLE"), -1L))
+                   .toList();
+    }
+
+    private static RawParameterizedSqlStatement pendingMutations(Set<String> tables) {
+        String tableFilter = "concat(database, '.', table) IN ("
+                                 + String.join(", ", Collections.nCopies(tables.size(), "?")) + ")";
+        // the replicas of a replicated table report the same mutation id
+        return new RawParameterizedSqlStatement(
+            "SELECT database AS DATABASE, table AS TABLE, mutation_id AS MUTATION_ID, "
+                + "any(" + MUTATION_NUMBER + ") AS MUTATION_NUMBER, "
+                + "sum(parts_to_do) AS PARTS_TO_DO, max(latest_fail_reason) AS FAIL_REASON "
+                + "FROM " + systemTable("mutations") + " "
+                + "WHERE NOT is_done AND " + tableFilter + " "
+                + "GROUP BY database, table, mutation_id ORDER BY database, table, mutation_id",
+            tables.toArray()
+        );
+    }
+
+    private static String failReason(Map<String, ?> mutation) {
+        String failReason = (String) mutation.get("FAIL_REASON");
+        return failReason == null ? "" : failReason;
+    }
+
+    private static String describe(List<Map<String, ?>> mutations) {
+        return mutations.stream()
+                   .map(mutation -> {
+                       String failReason = failReason(mutation);
+                       return mutation.get("DATABASE") + "." + mutation.get("TABLE") + " "
+                                  + mutation.get("MUTATION_ID")
+                                  + (failReason.isEmpty() ? "" : " (" + failReason + ")");
+                   })
+                   .collect(Collectors.joining(", "));
+    }
+
+    private static Logger getLogger() {
+        return Scope.getCurrentScope().getLog(MutationTracker.class);
+    }
+}
@@ -0,0 +1,112 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.database;
+
+import liquibase.Scope;
+import liquibase.changelog.ChangeSet;
+import liquibase.database.Database;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.Executor;
+import liquibase.ext.clickhouse.params.ExtensionOptions;
+import liquibase.ext.clickhouse.params.LiquibaseClickHouseConfig;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.ext.clickhouse.sqlgenerator.changelog.template.CreateMutationProgressTableTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changelog.template.InsertMutationProgressTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changelog.template.RemoveMutationProgressTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changelog.template.SelectMutationProgressTemplate;
+import liquibase.ext.clickhouse.statement.PartitionedUpdateStatement;
+import liquibase.logging.Logger;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.core.RawParameterizedSqlStatement;
+import liquibase.statement.core.RawSqlStatement;
+import liquibase.statement.core.UpdateStatement;
+import liquibase.util.MD5Util;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static liquibase.ext.clickhouse.sqlgenerator.SqlGeneratorUtil.systemTable;
+
+/**
+ * Runs an update mutation one batch of partitions at a time, found in {@code system.parts}, so that a huge table
+ * does not take the whole background pool. The partitions are recorded once their mutations are done, and an
+ * interrupted changeset resumes with the partitions it has not done yet.
+ */
+final class PartitionedMutation {
+
+    private final Database database;
+    private final UpdateStatement update;
+    private final String mutation;
+
+    PartitionedMutation(Database database, ChangeSet changeSet, UpdateStatement update) {
+        this.database = database;
+        this.update = update;
+        // the mutation is identified by its changeset and its statement, a changed update starts over
+        String sql = SqlGeneratorFactory.getInstance().generateSql(update, database)[0].toSql();
+        this.mutation = MD5Util.computeMD5(changeSet.toString(false) + "::" + sql);
+    }
+
+    void run(Executor executor) throws DatabaseException {
+        ExtensionOptions options = ParamsLoader.getExtensionOptions();
+        LiquibaseClickHouseConfig config = ParamsLoader.getLiquibaseClickhouseProperties();
+        executor.execute(new RawSqlStatement(config.accept(new CreateMutationProgressTableTemplate(database))));
+        Set<String> done = new HashSet<>(executor.queryForList(
+            new RawSqlStatement(config.accept(new SelectMutationProgressTemplate(database, mutation))), String.class));
+        List<String> partitionIds = executor.queryForList(partitions(), String.class).stream()
+                                        .filter(partitionId -> !done.contains(partitionId))
+                                        .toList();
+        if (!done.isEmpty()) {
+            getLogger().info(String.format("Resuming the update of %s, %d partitions done, %d left",
+                update.getTableName(), done.size(), partitionIds.size()));
+        }
+
+        String table = catalogName() + "." + update.getTableName();
+        int batchSize = options.mutationPartitionsPerBatch();
+        for (int from = 0; from < partitionIds.size(); from += batchSize) {
+            List<String> batch = partitionIds.subList(from, Math.min(from + batchSize, partitionIds.size()));
+            MutationTracker tracker = new MutationTracker();
+            tracker.start(executor);
+            for (String partitionId : batch) {
+                executor.execute(new PartitionedUpdateStatement(update, partitionId));
+            }
+            tracker.await(executor, Set.of(table), options.mutationTimeoutSeconds(), options.mutationPollMillis());
+            executor.execute(
+                new RawSqlStatement(config.accept(new InsertMutationProgressTemplate(database, mutation, batch))));
+        }
+        executor.execute(new RawSqlStatement(config.accept(new RemoveMutationProgressTemplate(database, mutation))));
+    }
+
+    private RawParameterizedSqlStatement partitions() {
+        return new RawParameterizedSqlStatement(
+            "SELECT DISTINCT partition_id FROM " + systemTable("parts") + " "
+                + "WHERE active AND database = ? AND table = ? ORDER BY partition_id",
+            catalogName(), update.getTableName()
+        );
+    }
+
+    private String catalogName() {
+        return update.getCatalogName() == null ? database.getDefaultCatalogName() : update.getCatalogName();
+    }
+
+    private static Logger getLogger() {
+        return Scope.getCurrentScope().getLog(PartitionedMutation.class);
+    }
+}
@@ -0,0 +1,77 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.database;
+
+import liquibase.Scope;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Version and optional features of the server, read once when the connection is set.
+ */
+public record ServerFeatures(
+    int majorVersion, int minorVersion, boolean lightweightUpdate, boolean lightweightDelete
+) {
+
+    public static final ServerFeatures NONE = new ServerFeatures(0, 0, false, false);
+
+    // patch parts were introduced in 25.7, behind a setting renamed once the feature left the experimental stage
+    private static final String DETECT_QUERY =
+        "SELECT version(), "
+            + "(SELECT max(value = '1') FROM system.settings "
+            + "WHERE name IN ('enable_lightweight_update', 'allow_experimental_lightweight_update')), "
+            + "(SELECT max(value = '1') FROM system.settings "
+            + "WHERE name IN ('enable_lightweight_delete', 'allow_experimental_lightweight_delete'))";
+
+    static ServerFeatures detect(JdbcConnection connection) {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(DETECT_QUERY)) {
+            if (!resultSet.next()) {
+                return NONE;
+            }
+            String[] version = resultSet.getString(1).split("\\.");
+            int major = Integer.parseInt(version[0]);
+            int minor = version.length > 1 ? Integer.parseInt(version[1]) : 0;
+            boolean lightweightUpdate = isAtLeast(major, minor, 25, 7) && resultSet.getBoolean(2);
+            // lightweight deletes left the experimental stage in 23.3
+            boolean lightweightDelete = isAtLeast(major, minor, 23, 3) && resultSet.getBoolean(3);
+            return new ServerFeatures(major, minor, lightweightUpdate, lightweightDelete);
+        } catch (DatabaseException | SQLException | RuntimeException e) {
+            Scope.getCurrentScope().getLog(ServerFeatures.class)
+                .fine("Could not detect the server features: " + e.getMessage());
+            return NONE;
+        }
+    }
+
+    /**
+     * Tells whether the server version is at least {@code major.minor}.
+     */
+    public boolean isAtLeast(int major, int minor) {
+        return isAtLeast(majorVersion, minorVersion, major, minor);
+    }
+
+    private static boolean isAtLeast(int major, int minor, int expectedMajor, int expectedMinor) {
+        return major > expectedMajor || (major == expectedMajor && minor >= expectedMinor);
+    }
+}
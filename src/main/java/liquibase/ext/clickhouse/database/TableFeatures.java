@@ -0,0 +1,108 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.database;
+
+import liquibase.Scope;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Optional features of a table, read from its {@code SETTINGS} clause and the MergeTree defaults of the server.
+ *
+ * @param lightweightUpdate  whether the table has the block number and offset columns of lightweight updates
+ * @param deduplicatedInsert whether the table drops inserted blocks with the token or checksum of a recent insert
+ */
+public record TableFeatures(boolean lightweightUpdate, boolean deduplicatedInsert) {
+
+    public static final TableFeatures NONE = new TableFeatures(false, false);
+
+    private static final String BLOCK_NUMBER_COLUMN = "enable_block_number_column";
+    private static final String BLOCK_OFFSET_COLUMN = "enable_block_offset_column";
+    private static final String REPLICATED_DEDUPLICATION_WINDOW = "replicated_deduplication_window";
+    private static final String NON_REPLICATED_DEDUPLICATION_WINDOW = "non_replicated_deduplication_window";
+    private static final String SETTING_NAMES = String.join("|", BLOCK_NUMBER_COLUMN, BLOCK_OFFSET_COLUMN,
+        REPLICATED_DEDUPLICATION_WINDOW, NON_REPLICATED_DEDUPLICATION_WINDOW);
+    private static final Pattern TABLE_SETTING = Pattern.compile(
+        "\\b(" + SETTING_NAMES + ")\\s*=\\s*'?(\\w+)'?");
+    // the table settings override the defaults, which are read first
+    private static final String DETECT_QUERY =
+        "SELECT source, name, value FROM ("
+            + "SELECT 0 AS source, name, value FROM system.merge_tree_settings "
+            + "WHERE name IN ('" + SETTING_NAMES.replace("|", "', '") + "') "
+            + "UNION ALL "
+            + "SELECT 1 AS source, engine AS name, create_table_query AS value FROM system.tables "
+            + "WHERE database = ? AND name = ? AND engine LIKE '%MergeTree') "
+            + "ORDER BY source";
+
+    /**
+     * Reads the features of a table, a table which does not exist or is not a MergeTree table has none.
+     */
+    static TableFeatures detect(JdbcConnection connection, String database, String table) {
+        try (PreparedStatement statement = connection.prepareStatement(DETECT_QUERY)) {
+            statement.setString(1, database);
+            statement.setString(2, table);
+            Map<String, String> settings = new HashMap<>();
+            String engine = null;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    if (resultSet.getInt(1) == 1) {
+                        engine = resultSet.getString(2);
+                        Matcher matcher = TABLE_SETTING.matcher(resultSet.getString(3));
+                        while (matcher.find()) {
+                            settings.put(matcher.group(1), matcher.group(2));
+                        }
+                    } else {
+                        settings.put(resultSet.getString(2), resultSet.getString(3));
+                    }
+                }
+            }
+            if (engine == null) {
+                return NONE;
+            }
+            // SharedMergeTree deduplicates the way the replicated engines do
+            boolean replicated = engine.startsWith("Replicated") || engine.startsWith("Shared");
+            return new TableFeatures(
+                isTrue(settings.get(BLOCK_NUMBER_COLUMN)) && isTrue(settings.get(BLOCK_OFFSET_COLUMN)),
+                isPositive(settings.get(replicated
+                                            ? REPLICATED_DEDUPLICATION_WINDOW
+                                            : NON_REPLICATED_DEDUPLICATION_WINDOW)));
+        } catch (DatabaseException | SQLException | RuntimeException e) {
+            Scope.getCurrentScope().getLog(TableFeatures.class)
+                .fine("Could not detect the features of " + database + "." + table + ": " + e.getMessage());
+            return NONE;
+        }
+    }
+
+    private static boolean isTrue(String value) {
+        return "1".equals(value) || "true".equalsIgnoreCase(value);
+    }
+
+    private static boolean isPositive(String value) {
+        return value != null && value.matches("0*[1-9]\\d*");
+    }
+}
@@ -0,0 +1,59 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.executor;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with jitter between attempts, e.g. to acquire the changelog lock or to run a statement again,
+ * so that processes started together do not retry in lockstep.
+ */
+public final class Backoff {
+
+    private final long initialMillis;
+    private final long maxMillis;
+    private int attempt;
+
+    public Backoff(long initialMillis, long maxMillis) {
+        this.initialMillis = initialMillis;
+        this.maxMillis = Math.max(initialMillis, maxMillis);
+    }
+
+    /**
+     * Returns the longest delay this backoff waits.
+     */
+    public long maxDelayMillis() {
+        return maxMillis;
+    }
+
+    /**
+     * Returns a delay between the half and the full value of the current step, then doubles the step.
+     */
+    public long nextDelayMillis() {
+        long step = initialMillis << Math.min(attempt, 30);
+        if (step <= 0 || step > maxMillis) {
+            step = maxMillis;
+        } else {
+            attempt++;
+        }
+        long half = step / 2;
+        return half + ThreadLocalRandom.current().nextLong(step - half + 1);
+    }
+}
@@ -0,0 +1,169 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.executor;
+
+import liquibase.database.Database;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.jvm.JdbcExecutor;
+import liquibase.executor.jvm.RowMapper;
+import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.ext.clickhouse.statement.InsertFileStatement;
+import liquibase.sql.visitor.SqlVisitor;
+import liquibase.statement.ExecutablePreparedStatement;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.InsertOrUpdateStatement;
+import liquibase.statement.core.InsertSetStatement;
+import liquibase.statement.core.InsertStatement;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JDBC executor of ClickHouse databases, holding mutations back while too many of them are unfinished,
+ * streaming file inserts through the client of the driver, submitting {@code ON CLUSTER} DDL without waiting
+ * while asynchronous DDL is on, adding the settings of the changeset and the deduplication tokens of inserts to
+ * the statements, and retrying idempotent statements failing with transient errors. Every statement fails once
+ * the changelog lock of the deployment is lost.
+ */
+public class ClickHouseJdbcExecutor extends JdbcExecutor {
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_DATABASE;
+    }
+
+    @Override
+    public boolean supports(Database database) {
+        return database instanceof ClickHouseDatabase;
+    }
+
+    @Override
+    public void execute(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        ((ClickHouseDatabase) database).checkChangeLogLock();
+        if (sql instanceof InsertFileStatement insertFile) {
+            awaitAsyncDdl();
+            new FileInsert(database, insertFile).run(this);
+            return;
+        }
+        List<SqlVisitor> visitors = withQuerySettings(sql, sqlVisitors);
+        if (sql instanceof ExecutablePreparedStatement) {
+            awaitAsyncDdl();
+            super.execute(sql, visitors);
+            return;
+        }
+        String[] queries = applyVisitors(sql, visitors);
+        recordMutatedTables(queries);
+        if (MutationLimiter.isEnabled(ParamsLoader.getExtensionOptions())) {
+            MutationLimiter limiter = new MutationLimiter(database);
+            for (String query : queries) {
+                limiter.awaitCapacity(this, query);
+            }
+        }
+        StatementRetry retry = newRetry();
+        if (!retry.isEnabled()) {
+            executeOrSubmit(sql, visitors, queries);
+            return;
+        }
+        retry.run(List.of(queries), () -> {
+            executeOrSubmit(sql, visitors, queries);
+            return null;
+        });
+    }
+
+    private StatementRetry newRetry() {
+        return new StatementRetry(ParamsLoader.getExtensionOptions(), (catalogName, tableName) ->
+            ((ClickHouseDatabase) database).getTableFeatures(catalogName, tableName).deduplicatedInsert());
+    }
+
+    /**
+     * Submits {@code ON CLUSTER} DDL without waiting for the hosts while asynchronous DDL is on, and executes
+     * anything else as usual once the DDL submitted before it is done.
+     */
+    private void executeOrSubmit(SqlStatement sql, List<SqlVisitor> visitors, String[] queries)
+            throws DatabaseException {
+        if (!((ClickHouseDatabase) database).submitAsyncDdl(queries)) {
+            awaitAsyncDdl();
+            super.execute(sql, visitors);
+        }
+    }
+
+    /**
+     * Waits for the {@code ON CLUSTER} DDL submitted so far, which a statement run on this host may depend on, e.g.
+     * an insert into a table created or altered before it in the changeset.
+     */
+    private void awaitAsyncDdl() throws DatabaseException {
+        ((ClickHouseDatabase) database).awaitAsyncDdl(this);
+    }
+
+    @Override
+    public int update(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        ((ClickHouseDatabase) database).checkChangeLogLock();
+        awaitAsyncDdl();
+        recordMutatedTables(applyVisitors(sql, sqlVisitors));
+        return super.update(sql, sqlVisitors);
+    }
+
+    /**
+     * Tells the changeset which tables to wait for the mutations of, when it is done.
+     */
+    private void recordMutatedTables(String[] queries) {
+        if (ParamsLoader.getExtensionOptions().awaitMutations()) {
+            ((ClickHouseDatabase) database).recordMutatedTables(queries);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public List query(SqlStatement sql, RowMapper rowMapper, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        ((ClickHouseDatabase) database).checkChangeLogLock();
+        StatementRetry retry = newRetry();
+        if (!retry.isEnabled()) {
+            return super.query(sql, rowMapper, sqlVisitors);
+        }
+        return retry.run(List.of(applyVisitors(sql, sqlVisitors)), () -> super.query(sql, rowMapper, sqlVisitors));
+    }
+
+    /**
+     * Returns the visitors adding the settings of the running changeset, and the deduplication token of an insert,
+     * to the SQL of the statement.
+     */
+    private List<SqlVisitor> withQuerySettings(SqlStatement sql, List<SqlVisitor> sqlVisitors) {
+        ClickHouseDatabase clickHouseDatabase = (ClickHouseDatabase) database;
+        Map<String, String> settings = new LinkedHashMap<>(clickHouseDatabase.runningChangeSettings());
+        boolean insert = sql instanceof InsertSetStatement
+                             || (sql instanceof InsertStatement && !(sql instanceof InsertOrUpdateStatement));
+        String token = insert ? clickHouseDatabase.nextDeduplicationToken() : null;
+        if (token != null) {
+            settings.put("insert_deduplication_token", token);
+        }
+        if (settings.isEmpty()) {
+            return sqlVisitors;
+        }
+        List<SqlVisitor> visitors = new ArrayList<>();
+        if (sqlVisitors != null) {
+            visitors.addAll(sqlVisitors);
+        }
+        visitors.add(new QuerySettingsVisitor(settings));
+        return visitors;
+    }
+}
@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.executor;
+
+import com.clickhouse.client.api.Client;
+import com.clickhouse.client.api.DataStreamWriter;
+import com.clickhouse.client.api.insert.InsertResponse;
+import com.clickhouse.client.api.insert.InsertSettings;
+import com.clickhouse.data.ClickHouseFormat;
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.Executor;
+import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.ext.clickhouse.statement.InsertFileStatement;
+import liquibase.resource.Resource;
+
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Streams the content of a file as is through the client of the JDBC driver, or a client of its own with the
+ * legacy driver, so that the rows are neither parsed nor held in memory. A file on the file system is copied by
+ * its channel, other resources by their stream.
+ */
+final class FileInsert {
+
+    private final Database database;
+    private final InsertFileStatement statement;
+
+    FileInsert(Database database, InsertFileStatement statement) {
+        this.database = database;
+        this.statement = statement;
+    }
+
+    void run(Executor executor) throws DatabaseException {
+        ClickHouseDatabase clickHouseDatabase = (ClickHouseDatabase) database;
+        Resource resource = statement.getResource();
+        if (!clickHouseDatabase.canOpenClient()) {
+            throw new DatabaseException(
+                "Streaming " + resource.getPath() + " needs a connection of the ClickHouse JDBC driver");
+        }
+        if (InsertThrottle.isEnabled(ParamsLoader.getExtensionOptions())) {
+            new InsertThrottle(database, executor, statement.getCatalogName(), statement.getTableName())
+                .awaitCapacity();
+        }
+        String table = database.escapeTableName(statement.getCatalogName(), null, statement.getTableName());
+        List<String> columns = statement.getColumns().stream()
+                                   .map(column -> database.escapeColumnName(
+                                       statement.getCatalogName(), null, statement.getTableName(), column))
+                                   .toList();
+        Client connectionClient = clickHouseDatabase.getClient();
+        // a connection of the legacy driver has no client of the new API, the file gets one of its own
+        try (Client ownClient = connectionClient == null ? clickHouseDatabase.openClient() : null) {
+            Client client = connectionClient != null ? connectionClient : ownClient;
+            try (InsertResponse response = client.insert(table, columns, writer(resource),
+                ClickHouseFormat.valueOf(statement.getFormat()), settings()).join()) {
+                Scope.getCurrentScope().getLog(FileInsert.class).info(String.format(
+                    "Loaded %d rows of %s into %s", response.getWrittenRows(), resource.getPath(), table));
+            }
+        } catch (Exception e) {
+            throw new DatabaseException("Could not load " + resource.getPath() + " into " + table, e);
+        }
+    }
+
+    private InsertSettings settings() {
+        InsertSettings settings = new InsertSettings();
+        ((ClickHouseDatabase) database).runningChangeSettings().forEach(settings::serverSetting);
+        String token = ((ClickHouseDatabase) database).nextDeduplicationToken();
+        if (token != null) {
+            settings.setDeduplicationToken(token);
+        }
+        if (statement.getCompression() != null) {
+            settings.appCompressedData(true, statement.getCompression().toLowerCase(Locale.ROOT));
+        } else if (statement.isCompressRequest()) {
+            settings.compressClientRequest(true);
+        }
+        return settings;
+    }
+
+    private static DataStreamWriter writer(Resource resource) {
+        Path path = "file".equals(resource.getUri().getScheme()) ? Path.of(resource.getUri()) : null;
+        return out -> {
+            if (path == null) {
+                try (InputStream in = resource.openInputStream()) {
+                    in.transferTo(out);
+                }
+            } else {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    WritableByteChannel target = Channels.newChannel(out);
+                    long position = 0;
+                    long size = channel.size();
+                    while (position < size) {
+                        position += channel.transferTo(position, size - position, target);
+                    }
+                }
+            }
+            out.flush();
+        };
+    }
+}
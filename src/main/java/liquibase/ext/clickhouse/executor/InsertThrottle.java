@@ -0,0 +1,130 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.executor;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.Executor;
+import liquibase.ext.clickhouse.params.ExtensionOptions;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.logging.Logger;
+import liquibase.statement.core.RawParameterizedSqlStatement;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static liquibase.ext.clickhouse.sqlgenerator.SqlGeneratorUtil.systemTable;
+
+/**
+ * Holds the next batch of a bulk insert back while a partition of the target table has nearly as many active parts
+ * as its {@code parts_to_delay_insert}, so that the merges catch up and the insert slows down instead of being
+ * delayed or rejected with {@code Too many parts} by the server.
+ */
+public final class InsertThrottle {
+
+    private static final Pattern PARTS_TO_DELAY_INSERT = Pattern.compile("\\bparts_to_delay_insert\\s*=\\s*(\\d+)");
+
+    private final Executor executor;
+    private final String catalogName;
+    private final String tableName;
+    private long threshold;
+
+    public InsertThrottle(Database database, Executor executor, String catalogName, String tableName) {
+        this.executor = executor;
+        this.catalogName = catalogName == null ? database.getDefaultCatalogName() : catalogName;
+        this.tableName = tableName;
+    }
+
+    public static boolean isEnabled(ExtensionOptions options) {
+        return options.insertThrottlePartsPercent() > 0;
+    }
+
+    /**
+     * Waits while the busiest partition of the table, on any replica, has reached the throttle threshold, at most
+     * {@code insert.throttleTimeoutSeconds}. Returns whether the table is still past half of the threshold, in
+     * which case the batches should be sent one at a time.
+     */
+    public boolean awaitCapacity() throws DatabaseException {
+        ExtensionOptions options = ParamsLoader.getExtensionOptions();
+        if (threshold == 0) {
+            threshold = Math.max(1, partsToDelayInsert() * options.insertThrottlePartsPercent() / 100);
+        }
+        long deadline = System.currentTimeMillis()
+                            + TimeUnit.SECONDS.toMillis(options.insertThrottleTimeoutSeconds());
+        Map<String, ?> pressure = executor.queryForList(pressure()).get(0);
+        while (activeParts(pressure) >= threshold) {
+            if (System.currentTimeMillis() >= deadline) {
+                getLogger().warning(String.format("%s.%s still has %s active parts in a partition after %d seconds, "
+                                                      + "inserting anyway", catalogName, tableName,
+                    pressure.get("ACTIVE_PARTS"), options.insertThrottleTimeoutSeconds()));
+                return true;
+            }
+            getLogger().info(String.format("Waiting for the merges of %s.%s: %s active parts in a partition, %s "
+                                               + "merges running, throttled from %d parts", catalogName, tableName,
+                pressure.get("ACTIVE_PARTS"), pressure.get("MERGES"), threshold));
+            try {
+                Thread.sleep(options.insertThrottlePollMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DatabaseException(e);
+            }
+            pressure = executor.queryForList(pressure()).get(0);
+        }
+        return activeParts(pressure) * 2 >= threshold;
+    }
+
+    /**
+     * Returns the {@code parts_to_delay_insert} of the table, or the default of the server if the table does not
+     * set it.
+     */
+    private long partsToDelayInsert() throws DatabaseException {
+        Map<String, ?> settings = executor.queryForList(new RawParameterizedSqlStatement(
+            "SELECT (SELECT any(toUInt64(value)) FROM system.merge_tree_settings "
+                + "WHERE name = 'parts_to_delay_insert') AS SERVER_LIMIT, "
+                + "(SELECT any(engine_full) FROM system.tables WHERE database = ? AND name = ?) AS ENGINE_FULL",
+            catalogName, tableName
+        )).get(0);
+        Matcher matcher = PARTS_TO_DELAY_INSERT.matcher(String.valueOf(settings.get("ENGINE_FULL")));
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : ((Number) settings.get("SERVER_LIMIT")).longValue();
+    }
+
+    private RawParameterizedSqlStatement pressure() {
+        // parts_to_delay_insert applies to every partition of every replica
+        return new RawParameterizedSqlStatement(
+            "SELECT (SELECT max(parts) FROM (SELECT count() AS parts FROM " + systemTable("parts")
+                + " WHERE active AND database = ? AND table = ? GROUP BY hostName(), partition_id)) AS ACTIVE_PARTS, "
+                + "(SELECT count() FROM " + systemTable("merges")
+                + " WHERE database = ? AND table = ?) AS MERGES",
+            catalogName, tableName, catalogName, tableName
+        );
+    }
+
+    private static long activeParts(Map<String, ?> pressure) {
+        Object parts = pressure.get("ACTIVE_PARTS");
+        return parts instanceof Number number ? number.longValue() : 0;
+    }
+
+    private static Logger getLogger() {
+        return Scope.getCurrentScope().getLog(InsertThrottle.class);
+    }
+}
@@ -0,0 +1,153 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.executor;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.Executor;
+import liquibase.ext.clickhouse.params.ExtensionOptions;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.logging.Logger;
+import liquibase.statement.core.RawParameterizedSqlStatement;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static liquibase.ext.clickhouse.sqlgenerator.SqlGeneratorUtil.systemTable;
+
+/**
+ * Holds a mutation back until the unfinished mutations of its table, and of the whole server or cluster, are
+ * below the configured caps, so that a migration does not run into {@code Too many mutations} or starve the
+ * merges of the production workload.
+ */
+final class MutationLimiter {
+
+    private static final Pattern ALTER_MUTATION = Pattern.compile(
+        "^\\s*ALTER\\s+TABLE\\s+(\\S+)(?:\\s+ON\\s+CLUSTER\\s+\\S+)?\\s+(?:UPDATE|DELETE)\\b",
+        Pattern.CASE_INSENSITIVE);
+    private static final Pattern LIGHTWEIGHT_DELETE = Pattern.compile(
+        "^\\s*DELETE\\s+FROM\\s+(\\S+)", Pattern.CASE_INSENSITIVE);
+
+    private final Database database;
+
+    MutationLimiter(Database database) {
+        this.database = database;
+    }
+
+    static boolean isEnabled(ExtensionOptions options) {
+        return options.maxPendingMutationsPerTable() > 0 || options.maxPendingMutationsTotal() > 0;
+    }
+
+    /**
+     * Waits until the mutation run by the given SQL, if it is one, can be submitted.
+     */
+    void awaitCapacity(Executor executor, String sql) throws DatabaseException {
+        Table table = mutatedTable(sql);
+        if (table == null || isLiquibaseTable(table)) {
+            // the Liquibase tables are never held back, so that the history is recorded and the lock released
+            return;
+        }
+        ExtensionOptions options = ParamsLoader.getExtensionOptions();
+        int maxPerTable = options.maxPendingMutationsPerTable();
+        int maxTotal = options.maxPendingMutationsTotal();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(options.mutationTimeoutSeconds());
+        var statement = pendingMutations(table);
+        Map<String, ?> pending = executor.queryForList(statement).get(0);
+        while (isOverCap(pending, "TABLE_PENDING", maxPerTable) || isOverCap(pending, "TOTAL_PENDING", maxTotal)) {
+            if (System.currentTimeMillis() >= deadline) {
+                throw new DatabaseException(String.format(
+                    "Too many unfinished mutations after %d seconds: %s on %s, %s in total",
+                    options.mutationTimeoutSeconds(), pending.get("TABLE_PENDING"), table,
+                    pending.get("TOTAL_PENDING")));
+            }
+            getLogger().info(String.format("Waiting to submit a mutation of %s: %s unfinished mutations on the "
+                                               + "table, %s in total", table, pending.get("TABLE_PENDING"),
+                pending.get("TOTAL_PENDING")));
+            try {
+                Thread.sleep(options.mutationPollMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DatabaseException(e);
+            }
+            pending = executor.queryForList(statement).get(0);
+        }
+    }
+
+    /**
+     * Returns the database and the name of the table mutated by the SQL, or {@code null} if it is no mutation.
+     */
+    private Table mutatedTable(String sql) {
+        Matcher matcher = ALTER_MUTATION.matcher(sql);
+        if (!matcher.find()) {
+            matcher = LIGHTWEIGHT_DELETE.matcher(sql);
+            if (!matcher.find()) {
+                return null;
+            }
+        }
+        List<String> parts = List.of(matcher.group(1).replace("`", "").replace("\"", "").split("\\.", 2));
+        return parts.size() == 2
+                   ? new Table(parts.get(0), parts.get(1))
+                   : new Table(database.getDefaultCatalogName(), parts.get(0));
+    }
+
+    /**
+     * Tells whether the table is the changelog or lock table, or one of their side tables named after them.
+     */
+    private boolean isLiquibaseTable(Table table) {
+        String catalogName = Objects.requireNonNullElseGet(database.getLiquibaseCatalogName(),
+            database::getDefaultCatalogName);
+        String name = table.name().toUpperCase(Locale.ROOT);
+        return table.database().equalsIgnoreCase(catalogName)
+                   && (name.startsWith(database.getDatabaseChangeLogTableName().toUpperCase(Locale.ROOT))
+                           || name.startsWith(database.getDatabaseChangeLogLockTableName().toUpperCase(Locale.ROOT)));
+    }
+
+    private static RawParameterizedSqlStatement pendingMutations(Table table) {
+        // the replicas of a replicated table report the same mutation id
+        return new RawParameterizedSqlStatement(
+            "SELECT uniqExactIf((database, table, mutation_id), database = ? AND table = ?) AS TABLE_PENDING, "
+                + "uniqExact((database, table, mutation_id)) AS TOTAL_PENDING "
+                + "FROM " + systemTable("mutations") + " WHERE NOT is_done",
+            table.database(), table.name()
+        );
+    }
+
+    private static boolean isOverCap(Map<String, ?> pending, String count, int max) {
+        return max > 0 && ((Number) pending.get(count)).longValue() >= max;
+    }
+
+    private record Table(String database, String name) {
+
+        @Override
+        public String toString() {
+            return database + "." + name;
+        }
+    }
+
+    private static Logger getLogger() {
+        return Scope.getCurrentScope().getLog(MutationLimiter.class);
+    }
+}
@@ -0,0 +1,82 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.executor;
+
+import liquibase.database.Database;
+import liquibase.sql.visitor.AbstractSqlVisitor;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Adds a {@code SETTINGS} clause to the queries, mutations and inserts of a changeset: before the values of an
+ * {@code INSERT ... VALUES} statement, at the end of other statements, or to the trailing {@code SETTINGS} clause
+ * the statement already has. DDL statements other than {@code ALTER} are left alone, since the {@code SETTINGS} of
+ * a {@code CREATE TABLE} are table settings.
+ */
+final class QuerySettingsVisitor extends AbstractSqlVisitor {
+
+    private static final String VALUES = " VALUES ";
+    private static final Pattern INSERT = Pattern.compile("^\\s*INSERT\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WITH_SETTINGS = Pattern.compile(
+        "^\\s*(?:SELECT|WITH|ALTER|DELETE|UPDATE|INSERT)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TRAILING_SETTINGS = Pattern.compile(
+        "\\bSETTINGS\\s+\\w+\\s*=\\s*(?:'(?:[^'\\\\]|\\\\.)*'|[^\\s,()']+)"
+            + "(?:\\s*,\\s*\\w+\\s*=\\s*(?:'(?:[^'\\\\]|\\\\.)*'|[^\\s,()']+))*\\s*$",
+        Pattern.CASE_INSENSITIVE);
+    private static final Pattern LITERAL = Pattern.compile("-?\\d+(?:\\.\\d+)?|true|false");
+
+    private final Map<String, String> settings;
+
+    QuerySettingsVisitor(Map<String, String> settings) {
+        this.settings = settings;
+    }
+
+    @Override
+    public String modifySql(String sql, Database database) {
+        if (!WITH_SETTINGS.matcher(sql).find()) {
+            return sql;
+        }
+        String clause = settings.entrySet().stream()
+                            .map(setting -> setting.getKey() + " = " + literal(setting.getValue(), database))
+                            .collect(Collectors.joining(", "));
+        int values = INSERT.matcher(sql).find() ? sql.indexOf(VALUES) : -1;
+        if (values >= 0) {
+            return sql.substring(0, values) + " SETTINGS " + clause + sql.substring(values);
+        }
+        String statement = sql.strip();
+        if (statement.endsWith(";")) {
+            statement = statement.substring(0, statement.length() - 1).strip();
+        }
+        return TRAILING_SETTINGS.matcher(statement).find()
+                   ? statement + ", " + clause
+                   : statement + " SETTINGS " + clause;
+    }
+
+    private static String literal(String value, Database database) {
+        return LITERAL.matcher(value).matches() ? value : "'" + database.escapeStringForDatabase(value) + "'";
+    }
+
+    @Override
+    public String getName() {
+        return "querySettings";
+    }
+}
@@ -0,0 +1,229 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.executor;
+
+import com.clickhouse.client.api.ServerException;
+import liquibase.Scope;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.clickhouse.params.ExtensionOptions;
+import liquibase.logging.Logger;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs a statement again when it fails with a transient ClickHouse error, with an exponential backoff depending on
+ * the class of the error, as long as running it again cannot change the outcome. Other statements fail on the
+ * first error.
+ */
+final class StatementRetry {
+
+    /**
+     * Classes of transient errors, with the factor of the first delay before a retry.
+     */
+    enum ErrorClass {
+        /** The server is busy, e.g. merges are behind: give it time. */
+        OVERLOAD(4),
+        /** The statement or a distributed DDL task took too long, the work may still be going on. */
+        TIMEOUT(2),
+        /** The connection or the Keeper session was lost. */
+        CONNECTION(1);
+
+        private final int backoffFactor;
+
+        ErrorClass(int backoffFactor) {
+            this.backoffFactor = backoffFactor;
+        }
+    }
+
+    private static final Map<Integer, ErrorClass> ERROR_CODES = Map.of(
+        159, ErrorClass.TIMEOUT,     // TIMEOUT_EXCEEDED
+        202, ErrorClass.OVERLOAD,    // TOO_MANY_SIMULTANEOUS_QUERIES
+        209, ErrorClass.CONNECTION,  // SOCKET_TIMEOUT
+        210, ErrorClass.CONNECTION,  // NETWORK_ERROR
+        242, ErrorClass.CONNECTION,  // TABLE_IS_READ_ONLY, while the replica reconnects to Keeper
+        252, ErrorClass.OVERLOAD,    // TOO_MANY_PARTS
+        341, ErrorClass.TIMEOUT,     // UNFINISHED, distributed DDL still running on some hosts
+        999, ErrorClass.CONNECTION   // KEEPER_EXCEPTION
+    );
+    private static final Pattern ERROR_CODE = Pattern.compile("\\bCode: (\\d+)\\b");
+
+    private static final Pattern READ = Pattern.compile(
+        "^\\s*(?:SELECT|WITH|SHOW|DESCRIBE|DESC|EXISTS|EXPLAIN|OPTIMIZE|TRUNCATE|SYSTEM\\s+SYNC)\\b",
+        Pattern.CASE_INSENSITIVE);
+    private static final Pattern GUARDED_DDL = Pattern.compile(
+        "^\\s*(?:(?:CREATE|ATTACH)\\s+(?:\\w+\\s+){1,3}?IF\\s+NOT\\s+EXISTS|CREATE\\s+OR\\s+REPLACE"
+            + "|(?:DROP|DETACH)\\s+(?:\\w+\\s+){1,3}?IF\\s+EXISTS)\\b",
+        Pattern.CASE_INSENSITIVE);
+    // once a failed attempt created the table, the retry of a statement also filling it does nothing, so a half
+    // filled table would be left behind
+    private static final Pattern FILLING_DDL = Pattern.compile(
+        "\\bAS\\s+(?:\\(\\s*)?(?:SELECT|WITH)\\b|\\bPOPULATE\\b|\\bEMPTY\\s+AS\\b",
+        Pattern.CASE_INSENSITIVE);
+    private static final Pattern DELETE = Pattern.compile("^\\s*DELETE\\s+FROM\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ALTER = Pattern.compile("^\\s*ALTER\\s+TABLE\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern UNGUARDED_ALTER = Pattern.compile(
+        "\\b(?:UPDATE|RENAME|MOVE|REPLACE|FREEZE|UNFREEZE|FETCH|ATTACH|APPLY)\\b"
+            + "|\\b(?:ADD|DROP|CLEAR|MATERIALIZE)\\s+(?:COLUMN|INDEX|PROJECTION|CONSTRAINT|STATISTICS)\\s+(?!IF\\b)"
+            + "|\\bDROP\\s+(?:PARTITION|PART|DETACHED)\\b",
+        Pattern.CASE_INSENSITIVE);
+    private static final Pattern DEDUPLICATED_INSERT = Pattern.compile(
+        "^\\s*INSERT\\b.*\\binsert_deduplication_token\\b", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern INSERT_TABLE = Pattern.compile(
+        "^\\s*INSERT\\s+INTO\\s+(?:TABLE\\s+)?([^\\s(]+)", Pattern.CASE_INSENSITIVE);
+
+    interface Attempt<T> {
+        T run() throws DatabaseException;
+    }
+
+    /**
+     * Tells whether the server drops the blocks inserted into a table again with the same deduplication token.
+     */
+    interface DeduplicatedTables {
+        /**
+         * @param catalogName the database of the table, or {@code null} for the default one
+         */
+        boolean deduplicates(String catalogName, String tableName);
+    }
+
+    private final ExtensionOptions options;
+    private final DeduplicatedTables deduplicatedTables;
+
+    StatementRetry(ExtensionOptions options, DeduplicatedTables deduplicatedTables) {
+        this.options = options;
+        this.deduplicatedTables = deduplicatedTables;
+    }
+
+    boolean isEnabled() {
+        return options.retryMaxAttempts() > 1;
+    }
+
+    /**
+     * Runs the attempt, which executes the given SQL, until it succeeds, fails with a permanent error, or has been
+     * made {@code retry.maxAttempts} times. The attempt is made once if one of the SQL is not idempotent.
+     */
+    <T> T run(List<String> sql, Attempt<T> attempt) throws DatabaseException {
+        // the target tables are read before the first attempt, as the connection may be gone after a failure
+        boolean idempotent = !sql.isEmpty() && sql.stream().allMatch(this::canRetry);
+        Backoff backoff = null;
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            try {
+                return attempt.run();
+            } catch (DatabaseException e) {
+                ErrorClass errorClass = classify(e);
+                if (!idempotent || errorClass == null || attemptNumber >= options.retryMaxAttempts()) {
+                    throw e;
+                }
+                if (backoff == null) {
+                    backoff = newBackoff(errorClass);
+                }
+                long delayMillis = backoff.nextDelayMillis();
+                getLogger().warning(String.format("Attempt %d of %d failed with a transient %s error, retrying in "
+                                                      + "%d ms: %s", attemptNumber, options.retryMaxAttempts(),
+                    errorClass, delayMillis, e.getMessage()));
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the backoff after the first failure, whose first step depends on the class of the error.
+     */
+    private Backoff newBackoff(ErrorClass errorClass) {
+        long initialMillis = Math.max(options.retryBackoffInitialMillis(), 1);
+        long maxMillis = Math.max(initialMillis, options.retryBackoffMaxMillis());
+        return new Backoff(Math.min(initialMillis * errorClass.backoffFactor, maxMillis), maxMillis);
+    }
+
+    /**
+     * Tells whether the SQL is idempotent, and for an INSERT tagged with a deduplication token, whether its table
+     * actually deduplicates it.
+     */
+    private boolean canRetry(String sql) {
+        if (!isIdempotent(sql)) {
+            return false;
+        }
+        if (!DEDUPLICATED_INSERT.matcher(sql).find()) {
+            return true;
+        }
+        Matcher matcher = INSERT_TABLE.matcher(sql);
+        if (!matcher.find()) {
+            return false;
+        }
+        List<String> parts = List.of(matcher.group(1).replace("`", "").replace("\"", "").split("\\.", 2));
+        return parts.size() == 2
+                   ? deduplicatedTables.deduplicates(parts.get(0), parts.get(1))
+                   : deduplicatedTables.deduplicates(null, parts.get(0));
+    }
+
+    /**
+     * Tells whether running the SQL again after a failure, which may have happened after the server applied it,
+     * leaves the database as running it once does, given that the table of an INSERT tagged with a deduplication
+     * token deduplicates it.
+     */
+    static boolean isIdempotent(String sql) {
+        boolean guardedDdl = GUARDED_DDL.matcher(sql).find() && !FILLING_DDL.matcher(sql).find();
+        if (READ.matcher(sql).find() || guardedDdl || DELETE.matcher(sql).find()
+                || DEDUPLICATED_INSERT.matcher(sql).find()) {
+            return true;
+        }
+        return ALTER.matcher(sql).find() && !UNGUARDED_ALTER.matcher(sql).find();
+    }
+
+    /**
+     * Returns the class of the transient error causing the exception, or {@code null} if the error is permanent.
+     */
+    static ErrorClass classify(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            int code = errorCode(cause);
+            if (code > 0) {
+                return ERROR_CODES.get(code);
+            }
+            if (cause instanceof IOException) {
+                return ErrorClass.CONNECTION;
+            }
+        }
+        return null;
+    }
+
+    private static int errorCode(Throwable exception) {
+        if (exception instanceof ServerException serverException) {
+            return serverException.getCode();
+        }
+        if (exception instanceof SQLException sqlException && sqlException.getErrorCode() > 0) {
+            return sqlException.getErrorCode();
+        }
+        Matcher matcher = ERROR_CODE.matcher(String.valueOf(exception.getMessage()));
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+    }
+
+    private static Logger getLogger() {
+        return Scope.getCurrentScope().getLog(StatementRetry.class);
+    }
+}
@@ -20,31 +20,99 @@
  */
 package liquibase.ext.clickhouse.lockservice;
 
+import com.clickhouse.client.api.Client;
+import com.clickhouse.client.api.query.GenericRecord;
 import liquibase.Scope;
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
 import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
 import liquibase.exception.DatabaseException;
 import liquibase.exception.LiquibaseException;
+import liquibase.exception.LockException;
 import liquibase.exception.UnexpectedLiquibaseException;
 import liquibase.executor.Executor;
 import liquibase.executor.ExecutorService;
+import liquibase.ext.clickhouse.changelog.ClickHouseChangeLogHistoryService;
 import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+import liquibase.ext.clickhouse.database.LiquibaseTables;
+import liquibase.ext.clickhouse.executor.Backoff;
+import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.ExtensionOptions;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.LockDatabaseChangeLogClickHouse;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.template.CreateLockQueueTableTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.template.DequeueLockWaiterTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.template.EnqueueLockWaiterTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.template.MigrateDatabaseChangeLogLockTableTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.template.ReleaseExpiredLockTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.template.RemoveUnlockedRecordTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.template.RenewLockTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.template.SelectExpiredLockTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.template.SelectFirstLockWaiterTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.template.SelectLockHolderTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.template.UnlockTemplate;
+import liquibase.lockservice.DatabaseChangeLogLock;
 import liquibase.lockservice.StandardLockService;
 import liquibase.logging.Logger;
+import liquibase.statement.core.LockDatabaseChangeLogStatement;
 import liquibase.statement.core.RawSqlStatement;
+import liquibase.statement.core.UnlockDatabaseChangeLogStatement;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 public class ClickHouseLockService extends StandardLockService {
 
+    private static final long MIN_TICKET_SECONDS = 10;
+    // KEEPER_EXCEPTION, raised for the existing key by the strict mode of KeeperMap
+    private static final Pattern KEEPER_ERROR = Pattern.compile("\\bCode: 999\\b");
+    /**
+     * Time a competing writer of the key-value lock record has to overwrite it, longer than the read and the
+     * write of an acquisition take.
+     */
+    private static final long KEY_VALUE_SETTLE_MILLIS = 500;
+    private static final Pattern KEY_EXISTS = Pattern.compile("Node exists|already exist", Pattern.CASE_INSENSITIVE);
+
     public ClickHouseLockService() {
         super();
     }
 
     @Override
     public void init() throws DatabaseException {
+        if (hasDatabaseChangeLogLockTable == null) {
+            // spares Liquibase its own existence check
+            hasDatabaseChangeLogLockTable = getLiquibaseTables().changeLogLockTable().isPresent();
+        }
+        if (hasDatabaseChangeLogLockTable) {
+            migrateLockTable();
+        }
+        boolean lockTableExisted = hasDatabaseChangeLogLockTable;
+        boolean lockTableInitialized = lockTableExisted && isDatabaseChangeLogLockTableInitialized(false);
         super.init();
-        hasDatabaseChangeLogLockTable = hasDatabaseChangeLogLockTable();
+        boolean updatesDatabase = getExecutor().updatesDatabase();
+        if (!lockTableInitialized && updatesDatabase) {
+            // the table was created or filled by super.init, so the cached state is outdated
+            ((ClickHouseDatabase) database).resetLiquibaseTables();
+            isLockTableInitialized = true;
+        }
+        // the table is only created in the SQL output of updateSql
+        hasDatabaseChangeLogLockTable = lockTableExisted || updatesDatabase;
     }
 
     private boolean isLockTableInitialized;
+    private Thread heartbeat;
+
+    /**
+     * Place of a waiter in the lock queue, valid for the given number of seconds unless renewed.
+     */
+    private record LockTicket(String waiter, long number, long seconds) {
+    }
 
     @Override
     public int getPriority() {
@@ -58,42 +126,556 @@ public class ClickHouseLockService extends StandardLockService {
 
     @Override
     public boolean isDatabaseChangeLogLockTableInitialized(boolean tableJustCreated) {
-        if (!isLockTableInitialized) {
+        if (isKeeperMapLock()) {
+            // an empty KeeperMap table is the unlocked state, truncating it could drop a lock taken meanwhile
+            return true;
+        }
+        if (!isLockTableInitialized && !tableJustCreated) {
             try {
-                String query =
-                    String.format(
-                        "SELECT COUNT(*) FROM `%s`.%s",
-                        database.getLiquibaseCatalogName(), database.getDatabaseChangeLogLockTableName()
-                    );
-                int nbRows = getExecutor().queryForInt(new RawSqlStatement(query));
-                isLockTableInitialized = nbRows > 0;
+                Optional<LiquibaseTables.Table> lockTable = getLiquibaseTables().changeLogLockTable();
+                if (lockTable.isPresent()) {
+                    // total_rows is not reported by every engine
+                    Long totalRows = lockTable.get().totalRows();
+                    isLockTableInitialized = (totalRows == null ? countLockRecords() : totalRows) > 0;
+                }
             } catch (LiquibaseException e) {
                 if (getExecutor().updatesDatabase()) {
                     throw new UnexpectedLiquibaseException(e);
                 } else {
-                    isLockTableInitialized = !tableJustCreated;
+                    isLockTableInitialized = true;
                 }
             }
         }
         return isLockTableInitialized;
     }
 
-    private boolean hasDatabaseChangeLogLockTable() {
-        boolean hasTable = false;
+    @Override
+    public void waitForLock() throws LockException {
+        ExtensionOptions options = ParamsLoader.getExtensionOptions();
+        if (options.lockBackoffInitialMillis() <= 0 && !options.lockFairQueue()) {
+            super.waitForLock();
+            return;
+        }
+        long recheckMillis = TimeUnit.SECONDS.toMillis(getChangeLogLockRecheckTime());
+        Backoff backoff = options.lockBackoffInitialMillis() > 0
+            ? new Backoff(options.lockBackoffInitialMillis(), options.lockBackoffMaxMillis())
+            : new Backoff(recheckMillis, recheckMillis);
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(getChangeLogLockWaitTime());
+        // a ticket outlives a few polls, so the ticket of a killed waiter stops blocking the queue soon
+        long ticketSeconds = Math.max(
+            MIN_TICKET_SECONDS, TimeUnit.MILLISECONDS.toSeconds(3 * backoff.maxDelayMillis()) + 1
+        );
+        LockTicket ticket = options.lockFairQueue() ? enqueueWaiter(ticketSeconds) : null;
+        boolean locked = false;
+        try {
+            while (true) {
+                if (ticket == null || isFirstWaiter(ticket)) {
+                    locked = acquireLock();
+                }
+                if (locked || System.currentTimeMillis() >= deadline) {
+                    break;
+                }
+                getLogger().info("Waiting for changelog lock....");
+                try {
+                    Thread.sleep(backoff.nextDelayMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } finally {
+            if (ticket != null) {
+                dequeueWaiter(ticket.waiter());
+            }
+        }
+        if (!locked) {
+            DatabaseChangeLogLock[] locks = listLocks();
+            String lockedBy = locks.length > 0 ? locks[0].getLockedBy() : "UNKNOWN";
+            throw new LockException("Could not acquire change log lock.  Currently locked by " + lockedBy);
+        }
+    }
+
+    @Override
+    public boolean acquireLock() throws LockException {
+        if (hasChangeLogLock) {
+            return true;
+        }
+        ((ClickHouseDatabase) database).setLostChangeLogLock(null);
+        int leaseSeconds = ParamsLoader.getExtensionOptions().lockLeaseSeconds();
+        if (leaseSeconds > 0) {
+            releaseExpiredLock(leaseSeconds);
+        }
+        boolean acquired = isKeeperMapLock() ? acquireKeeperMapLock() : super.acquireLock();
+        if (acquired && ParamsLoader.getExtensionOptions().keyValueLockTable()) {
+            acquired = confirmKeyValueLock();
+        }
+        if (acquired && leaseSeconds > 0) {
+            try {
+                startHeartbeat(leaseSeconds);
+            } catch (DatabaseException e) {
+                // without renewals the lease would run out during the deployment
+                releaseLock();
+                throw new LockException(e);
+            }
+        }
+        return acquired;
+    }
+
+    @Override
+    public void releaseLock() throws LockException {
+        try {
+            try {
+                // the DDL has to be done before the lock is handed over
+                finishAsyncDdl();
+            } finally {
+                flushChangeLogHistory();
+            }
+        } finally {
+            stopHeartbeat();
+            // the release itself has to run, it leaves a lock taken over by another process alone
+            ((ClickHouseDatabase) database).setLostChangeLogLock(null);
+            releaseOwnLock();
+        }
+    }
+
+    /**
+     * Releases the lock whoever holds it, for {@code releaseLocks}.
+     */
+    @Override
+    public void forceReleaseLock() throws LockException, DatabaseException {
+        init();
+        stopHeartbeat();
+        ((ClickHouseDatabase) database).setLostChangeLogLock(null);
+        try {
+            var config = ParamsLoader.getLiquibaseClickhouseProperties();
+            getExecutor().comment("Release Database Lock");
+            getExecutor().execute(new RawSqlStatement(config.accept(new UnlockTemplate(database, null))));
+            database.commit();
+        } finally {
+            hasChangeLogLock = false;
+            database.setCanCacheLiquibaseTableInfo(false);
+        }
+        getLogger().info("Successfully released change log lock");
+    }
+
+    @Override
+    public void reset() {
+        stopHeartbeat();
+        super.reset();
+    }
+
+    @Override
+    public void destroy() throws DatabaseException {
+        super.destroy();
+        if (database instanceof ClickHouseDatabase clickHouseDatabase) {
+            clickHouseDatabase.resetLiquibaseTables();
+        }
+    }
+
+    /**
+     * Moves an existing standalone lock table to EmbeddedRocksDB once the option asks for it. The migration runs
+     * under the lock of the previous table, so clients still using it either wait or fail on the new table.
+     */
+    private void migrateLockTable() throws DatabaseException {
+        if (isKeeperMapLock()
+                || !ParamsLoader.getExtensionOptions().keyValueLockTable()
+                || !getExecutor().updatesDatabase()) {
+            return;
+        }
+        Optional<LiquibaseTables.Table> lockTable = getLiquibaseTables().changeLogLockTable();
+        if (lockTable.isEmpty() || ExtensionOptions.EMBEDDED_ROCKS_DB.equals(lockTable.get().engine())) {
+            return;
+        }
+        String catalog = database.getLiquibaseCatalogName();
+        String table = database.getDatabaseChangeLogLockTableName();
+        waitForCollapsedLockRelease(catalog, table);
+        getLogger().info("Moving " + table + " to the " + ExtensionOptions.EMBEDDED_ROCKS_DB + " engine");
+        executeOnConnection(String.format(
+            "INSERT INTO `%s`.%s (ID, LOCKED, LOCKEDBY, LOCKGRANTED, SIGN) VALUES (1, 1, '%s', now64(), 1)",
+            catalog, table, LockDatabaseChangeLogClickHouse.getLockedBy()
+        ));
+        try {
+            var config = ParamsLoader.getLiquibaseClickhouseProperties();
+            for (String query : config.accept(new MigrateDatabaseChangeLogLockTableTemplate(database))) {
+                getExecutor().execute(new RawSqlStatement(query));
+            }
+        } catch (DatabaseException e) {
+            // the previous table is still in place unless the tables were exchanged
+            if (!isKeyValueLockTable()) {
+                executeOnConnection(String.format(
+                    "INSERT INTO `%s`.%s (ID, LOCKED, LOCKEDBY, LOCKGRANTED, SIGN) VALUES (1, 1, null, null, -1)",
+                    catalog, table
+                ));
+            }
+            throw e;
+        } finally {
+            ((ClickHouseDatabase) database).resetLiquibaseTables();
+        }
+        isLockTableInitialized = true;
+    }
+
+    private void waitForCollapsedLockRelease(String catalog, String table) throws DatabaseException {
+        String query = String.format("SELECT max(LOCKED) FROM `%s`.%s FINAL WHERE ID = 1 AND SIGN = 1", catalog, table);
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(getChangeLogLockWaitTime());
+        while (getExecutor().queryForInt(new RawSqlStatement(query)) > 0) {
+            if (System.currentTimeMillis() >= deadline) {
+                throw new DatabaseException("Could not move " + table + " to a new engine, it is still locked");
+            }
+            getLogger().info("Waiting for changelog lock....");
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(getChangeLogLockRecheckTime()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DatabaseException(e);
+            }
+        }
+    }
+
+    private boolean isKeyValueLockTable() throws DatabaseException {
+        ((ClickHouseDatabase) database).resetLiquibaseTables();
+        return getLiquibaseTables().changeLogLockTable()
+                   .map(table -> ExtensionOptions.EMBEDDED_ROCKS_DB.equals(table.engine()))
+                   .orElse(false);
+    }
+
+    private void releaseExpiredLock(int leaseSeconds) throws LockException {
+        try {
+            init();
+            var config = ParamsLoader.getLiquibaseClickhouseProperties();
+            String query = config.accept(new SelectExpiredLockTemplate(database, leaseSeconds));
+            List<String> holders = getExecutor().queryForList(new RawSqlStatement(query), String.class);
+            if (holders.isEmpty()) {
+                return;
+            }
+            getLogger().warning(String.format(
+                "The changelog lock held by %s was not renewed for %d seconds, releasing it",
+                holders.get(0), leaseSeconds
+            ));
+            // only the expired lock of that holder is released, not one taken meanwhile by another waiter
+            executeOnConnection(config.accept(new ReleaseExpiredLockTemplate(database, leaseSeconds, holders.get(0))));
+            database.commit();
+        } catch (DatabaseException e) {
+            throw new LockException(e);
+        }
+    }
+
+    /**
+     * Acquires the lock with a single strict-mode insert of the lock record: Keeper rejects the insert when the
+     * record already exists, so there is no window between reading and writing the lock state.
+     */
+    private boolean acquireKeeperMapLock() throws LockException {
+        try {
+            init();
+            getExecutor().comment("Lock Database");
+            boolean inserted = insertLockRecordIfAbsent();
+            if (!inserted && removeUnlockedRecord()) {
+                inserted = insertLockRecordIfAbsent();
+            }
+            if (!inserted) {
+                return false;
+            }
+            database.commit();
+        } catch (DatabaseException e) {
+            throw new LockException(e);
+        }
+        getLogger().info(coreBundle.getString("successfully.acquired.change.log.lock"));
+        hasChangeLogLock = true;
+        Scope.getCurrentScope().getSingleton(ChangeLogHistoryServiceFactory.class).resetAll();
+        database.setCanCacheLiquibaseTableInfo(true);
+        return true;
+    }
+
+    /**
+     * Inserts the lock record unless another client holds the lock.
+     *
+     * @return false if the record exists already
+     */
+    private boolean insertLockRecordIfAbsent() throws DatabaseException {
         try {
-            String query =
-                String.format(
-                    "SELECT ID FROM `%s`.%s LIMIT 1",
-                    database.getLiquibaseCatalogName(), database.getDatabaseChangeLogLockTableName()
-                );
-            getExecutor().execute(new RawSqlStatement(query));
-            hasTable = true;
+            insertLockRecord();
+            return true;
         } catch (DatabaseException e) {
-            getLogger()
-                .info(
-                    String.format("No %s table available", database.getDatabaseChangeLogLockTableName()));
+            if (isKeyExistsError(e)) {
+                getLogger().fine("Changelog lock is held by another client: " + e.getMessage());
+                return false;
+            }
+            // the insert may have been applied before the error, e.g. when the connection broke on the response
+            String holder = selectLockHolder();
+            if (LockDatabaseChangeLogClickHouse.getLockedBy().equals(holder)) {
+                return true;
+            }
+            if (holder != null) {
+                getLogger().fine("Changelog lock is held by " + holder + ": " + e.getMessage());
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Tells whether the insert failed because Keeper already has the lock record.
+     */
+    static boolean isKeyExistsError(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            String message = String.valueOf(cause.getMessage());
+            boolean keeperError = (cause instanceof SQLException sqlException && sqlException.getErrorCode() == 999)
+                                      || KEEPER_ERROR.matcher(message).find();
+            if (keeperError && KEY_EXISTS.matcher(message).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Confirms the lock written to the key-value table. The write overwrites whatever record is there, so two
+     * clients which both found the lock free both write it, and the later write wins. Every acquisition which
+     * read the free lock writes within the settle time, so the record read back after it has its final holder.
+     */
+    private boolean confirmKeyValueLock() throws LockException {
+        String holder;
+        try {
+            Thread.sleep(KEY_VALUE_SETTLE_MILLIS);
+            holder = selectLockHolder();
+        } catch (InterruptedException | DatabaseException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // the record may be ours, it must not stay behind
+            releaseLock();
+            throw new LockException(e);
+        }
+        if (LockDatabaseChangeLogClickHouse.getLockedBy().equals(holder)) {
+            return true;
         }
-        return hasTable;
+        getLogger().fine("Changelog lock was overwritten by " + holder);
+        hasChangeLogLock = false;
+        database.setCanCacheLiquibaseTableInfo(false);
+        return false;
+    }
+
+    private void insertLockRecord() throws DatabaseException {
+        int rowsUpdated = getExecutor().update(new LockDatabaseChangeLogStatement());
+        if (rowsUpdated > 1) {
+            throw new DatabaseException("Did not update change log lock correctly");
+        }
+    }
+
+    /**
+     * Deletes the unlocked record left behind by the previous lock protocol.
+     *
+     * @return true if such a record was found
+     */
+    private boolean removeUnlockedRecord() throws DatabaseException {
+        String query = String.format(
+            "SELECT LOCKED FROM `%s`.%s WHERE ID = 1",
+            database.getLiquibaseCatalogName(), database.getDatabaseChangeLogLockTableName()
+        );
+        List<Boolean> locked = getExecutor().queryForList(new RawSqlStatement(query), Boolean.class);
+        if (locked.isEmpty() || Boolean.TRUE.equals(locked.get(0))) {
+            return false;
+        }
+        var config = ParamsLoader.getLiquibaseClickhouseProperties();
+        executeOnConnection(config.accept(new RemoveUnlockedRecordTemplate(database)));
+        return true;
+    }
+
+    /**
+     * Releases the lock if this process holds it, and fails if another process took it over meanwhile.
+     */
+    private void releaseOwnLock() throws LockException {
+        String holder = null;
+        try {
+            if (isDatabaseChangeLogLockTableCreated()) {
+                holder = selectLockHolder();
+                getExecutor().comment("Release Database Lock");
+                // the update count is not checked: a mutation does not report the deleted rows, and the unlock of
+                // a lock taken over by another process matches no row
+                getExecutor().update(new UnlockDatabaseChangeLogStatement());
+                database.commit();
+            }
+        } catch (DatabaseException e) {
+            throw new LockException(e);
+        } finally {
+            hasChangeLogLock = false;
+            database.setCanCacheLiquibaseTableInfo(false);
+        }
+        if (holder != null && !holder.equals(LockDatabaseChangeLogClickHouse.getLockedBy())) {
+            throw new LockException("Did not release the changelog lock, it was taken over by " + holder);
+        }
+        getLogger().info("Successfully released change log lock");
+    }
+
+    /**
+     * Returns the holder of the lock, {@code null} if it is not locked.
+     */
+    private String selectLockHolder() throws DatabaseException {
+        var config = ParamsLoader.getLiquibaseClickhouseProperties();
+        String query = config.accept(new SelectLockHolderTemplate(database));
+        List<String> holders = getExecutor().queryForList(new RawSqlStatement(query), String.class);
+        return holders.isEmpty() ? null : holders.get(0);
+    }
+
+    private void executeOnConnection(String query) throws DatabaseException {
+        if (!(database.getConnection() instanceof JdbcConnection connection)) {
+            throw new DatabaseException("Cannot execute " + query + " without a JDBC connection");
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(query);
+        } catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    private static boolean isKeeperMapLock() {
+        return ParamsLoader.getLiquibaseClickhouseProperties() instanceof ClusterConfig;
+    }
+
+    private LockTicket enqueueWaiter(long ticketSeconds) throws LockException {
+        String waiter = LockDatabaseChangeLogClickHouse.getLockedBy() + " " + UUID.randomUUID();
+        try {
+            init();
+            var config = ParamsLoader.getLiquibaseClickhouseProperties();
+            executeOnConnection(config.accept(new CreateLockQueueTableTemplate(database)));
+            // the position in the queue is taken from the server clock, shared by all waiters
+            long number = getExecutor().queryForLong(new RawSqlStatement("SELECT toUnixTimestamp64Nano(now64(9))"));
+            var ticket = new LockTicket(waiter, number, ticketSeconds);
+            renewTicket(ticket);
+            return ticket;
+        } catch (DatabaseException e) {
+            throw new LockException(e);
+        }
+    }
+
+    private boolean isFirstWaiter(LockTicket ticket) throws LockException {
+        var config = ParamsLoader.getLiquibaseClickhouseProperties();
+        String query = config.accept(new SelectFirstLockWaiterTemplate(database));
+        try {
+            // the ticket is renewed on every poll, so only the tickets of live waiters stay in the queue
+            renewTicket(ticket);
+            List<String> first = getExecutor().queryForList(new RawSqlStatement(query), String.class);
+            // an empty queue means the ticket expired, the waiter then competes like any other
+            return first.isEmpty() || ticket.waiter().equals(first.get(0));
+        } catch (DatabaseException e) {
+            throw new LockException(e);
+        }
+    }
+
+    private void renewTicket(LockTicket ticket) throws DatabaseException {
+        var config = ParamsLoader.getLiquibaseClickhouseProperties();
+        executeOnConnection(config.accept(
+            new EnqueueLockWaiterTemplate(database, ticket.waiter(), ticket.number(), ticket.seconds())
+        ));
+    }
+
+    private void dequeueWaiter(String waiter) {
+        var config = ParamsLoader.getLiquibaseClickhouseProperties();
+        try {
+            executeOnConnection(config.accept(new DequeueLockWaiterTemplate(database, waiter)));
+        } catch (DatabaseException e) {
+            // the ticket expires anyway once the wait time is over
+            getLogger().warning("Could not leave the changelog lock queue", e);
+        }
+    }
+
+    private void startHeartbeat(int leaseSeconds) throws DatabaseException {
+        if (heartbeat != null || !(database.getConnection() instanceof JdbcConnection)) {
+            return;
+        }
+        var config = ParamsLoader.getLiquibaseClickhouseProperties();
+        String lockedBy = LockDatabaseChangeLogClickHouse.getLockedBy();
+        String query = config.accept(new RenewLockTemplate(database, lockedBy));
+        String holderQuery = config.accept(new SelectLockHolderTemplate(database));
+        long leaseMillis = TimeUnit.SECONDS.toMillis(leaseSeconds);
+        long intervalMillis = leaseMillis / 3;
+        // the thread does not inherit the Liquibase scope, and the JDBC connection of the deployment is busy with
+        // the changesets, so the renewals go through a client of their own
+        ClickHouseDatabase clickHouseDatabase = (ClickHouseDatabase) database;
+        Client client = clickHouseDatabase.openClient();
+        Logger logger = getLogger();
+        heartbeat = Thread.ofVirtual().name("liquibase-clickhouse-lock-heartbeat").start(() -> {
+            long renewedMillis = System.currentTimeMillis();
+            try (client) {
+                while (!Thread.currentThread().isInterrupted()) {
+                    String lost = null;
+                    try {
+                        Thread.sleep(intervalMillis);
+                        client.execute(query).get(intervalMillis, TimeUnit.MILLISECONDS).close();
+                        // the renewal matches no row once another process released the lock or took it over
+                        List<GenericRecord> holders = client.queryAll(holderQuery);
+                        String holder = holders.isEmpty() ? null : holders.get(0).getString(1);
+                        if (lockedBy.equals(holder)) {
+                            renewedMillis = System.currentTimeMillis();
+                        } else {
+                            lost = "The changelog lock was lost after its lease ran out, it is now held by "
+                                       + Objects.requireNonNullElse(holder, "no one");
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (Exception e) {
+                        logger.warning("Could not renew the changelog lock", e);
+                        if (System.currentTimeMillis() - renewedMillis >= leaseMillis) {
+                            lost = "The changelog lock was not renewed for " + leaseSeconds
+                                       + " seconds, another process may have taken it over";
+                        }
+                    }
+                    if (lost != null) {
+                        // the deployment fails on its next statement, rather than racing the new holder
+                        logger.severe(lost);
+                        clickHouseDatabase.setLostChangeLogLock(lost);
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    private void stopHeartbeat() {
+        if (heartbeat == null) {
+            return;
+        }
+        heartbeat.interrupt();
+        try {
+            heartbeat.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        heartbeat = null;
+    }
+
+    private void finishAsyncDdl() throws LockException {
+        try {
+            ((ClickHouseDatabase) database).finishAsyncDdl(getExecutor());
+        } catch (DatabaseException e) {
+            throw new LockException(e);
+        }
+    }
+
+    private void flushChangeLogHistory() throws LockException {
+        var historyService = Scope.getCurrentScope()
+                                 .getSingleton(ChangeLogHistoryServiceFactory.class)
+                                 .getChangeLogService(database);
+        if (historyService instanceof ClickHouseChangeLogHistoryService clickHouseHistoryService) {
+            try {
+                clickHouseHistoryService.flushPendingChangeSets();
+                clickHouseHistoryService.storeFingerprint();
+            } catch (DatabaseException e) {
+                throw new LockException(e);
+            }
+        }
+    }
+
+    private int countLockRecords() throws DatabaseException {
+        String query =
+            String.format(
+                "SELECT COUNT(*) FROM `%s`.%s",
+                database.getLiquibaseCatalogName(), database.getDatabaseChangeLogLockTableName()
+            );
+        return getExecutor().queryForInt(new RawSqlStatement(query));
+    }
+
+    private LiquibaseTables getLiquibaseTables() throws DatabaseException {
+        return ((ClickHouseDatabase) database).getLiquibaseTables(getExecutor());
     }
 
     private Executor getExecutor() {
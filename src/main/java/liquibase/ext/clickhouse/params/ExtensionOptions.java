@@ -0,0 +1,330 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.params;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+/**
+ * Optional tuning knobs of the extension, read from the same configuration file as the cluster settings.
+ * Every option has a default, so an absent block keeps the original behaviour.
+ */
+public final class ExtensionOptions {
+
+    public static final String COLLAPSING_MERGE_TREE = "CollapsingMergeTree";
+    public static final String EMBEDDED_ROCKS_DB = "EmbeddedRocksDB";
+
+    private static final String MARK_RAN_BATCH_SIZE = "changelog.markRanBatchSize";
+    private static final String APPEND_ONLY_RERUNS = "changelog.appendOnlyReruns";
+    private static final String CHANGELOG_FINGERPRINT = "changelog.fingerprint";
+    private static final String CHANGELOG_PARALLELISM = "changelog.parallelism";
+    private static final String DDL_ASYNC = "ddl.async";
+    private static final String DDL_TIMEOUT_SECONDS = "ddl.timeoutSeconds";
+    private static final String DDL_POLL_MILLIS = "ddl.pollMillis";
+    private static final String MUTATION_AWAIT = "mutation.await";
+    private static final String MUTATION_TIMEOUT_SECONDS = "mutation.timeoutSeconds";
+    private static final String MUTATION_POLL_MILLIS = "mutation.pollMillis";
+    private static final String MUTATION_COALESCE_UPDATES = "mutation.coalesceUpdates";
+    private static final String MUTATION_LIGHTWEIGHT_UPDATES = "mutation.lightweightUpdates";
+    private static final String MUTATION_LIGHTWEIGHT_DELETES = "mutation.lightweightDeletes";
+    private static final String MUTATION_PARTITIONS_PER_BATCH = "mutation.partitionsPerBatch";
+    private static final String MUTATION_MAX_PENDING_PER_TABLE = "mutation.maxPendingPerTable";
+    private static final String MUTATION_MAX_PENDING_TOTAL = "mutation.maxPendingTotal";
+    private static final String INSERT_BATCH_ROWS = "insert.batchRows";
+    private static final String INSERT_PARALLEL_SENDERS = "insert.parallelSenders";
+    private static final String INSERT_DEDUPLICATION_TOKENS = "insert.deduplicationTokens";
+    private static final String INSERT_THROTTLE_PARTS_PERCENT = "insert.throttlePartsPercent";
+    private static final String INSERT_THROTTLE_POLL_MILLIS = "insert.throttlePollMillis";
+    private static final String INSERT_THROTTLE_TIMEOUT_SECONDS = "insert.throttleTimeoutSeconds";
+    private static final String RETRY_MAX_ATTEMPTS = "retry.maxAttempts";
+    private static final String RETRY_BACKOFF_INITIAL_MILLIS = "retry.backoffInitialMillis";
+    private static final String RETRY_BACKOFF_MAX_MILLIS = "retry.backoffMaxMillis";
+    private static final String LOCK_LEASE_SECONDS = "lock.leaseSeconds";
+    private static final String LOCK_ENGINE = "lock.engine";
+    private static final String LOCK_BACKOFF_INITIAL_MILLIS = "lock.backoffInitialMillis";
+    private static final String LOCK_BACKOFF_MAX_MILLIS = "lock.backoffMaxMillis";
+    private static final String LOCK_FAIR_QUEUE = "lock.fairQueue";
+
+    private final Config config;
+
+    private ExtensionOptions(Config config) {
+        this.config = config;
+    }
+
+    public static ExtensionOptions of(Config config) {
+        return new ExtensionOptions(config);
+    }
+
+    public static ExtensionOptions defaults() {
+        return new ExtensionOptions(ConfigFactory.empty());
+    }
+
+    /**
+     * Number of DATABASECHANGELOG rows collected before they are written with a single multi-row INSERT.
+     * {@code 0} writes every row as soon as its changeset is marked as ran.
+     */
+    public int markRanBatchSize() {
+        return getInt(MARK_RAN_BATCH_SIZE, 0);
+    }
+
+    /**
+     * Records re-runs of runAlways and runOnChange changesets as new DATABASECHANGELOG rows instead of
+     * {@code ALTER TABLE ... UPDATE} mutations. The newest row of a changeset wins when the history is read.
+     */
+    public boolean appendOnlyReruns() {
+        return getBoolean(APPEND_ONLY_RERUNS, false);
+    }
+
+    /**
+     * Stores a fingerprint of the applied changesets whenever the changelog lock is released, so that
+     * {@code ChangeLogFastCheck} can tell an applied changelog apart without locking or reading the history.
+     */
+    public boolean changeLogFingerprint() {
+        return getBoolean(CHANGELOG_FINGERPRINT, false);
+    }
+
+    /**
+     * Number of changesets run at the same time by {@code ParallelChangeLogUpdate}, each over its own connection.
+     */
+    public int changeLogParallelism() {
+        return getInt(CHANGELOG_PARALLELISM, 4);
+    }
+
+    /**
+     * Submits the {@code ON CLUSTER} DDL of a changeset without waiting for the hosts, and waits for all of it
+     * through {@code system.distributed_ddl_queue} before the changeset is recorded. Cluster mode only.
+     */
+    public boolean asyncDdl() {
+        return getBoolean(DDL_ASYNC, false);
+    }
+
+    /**
+     * Time in seconds to wait for the asynchronous DDL tasks of a changeset, after which the changeset fails.
+     */
+    public int ddlTimeoutSeconds() {
+        return getInt(DDL_TIMEOUT_SECONDS, 600);
+    }
+
+    /**
+     * Delay in milliseconds between two reads of {@code system.distributed_ddl_queue}.
+     */
+    public int ddlPollMillis() {
+        return getInt(DDL_POLL_MILLIS, 1000);
+    }
+
+    /**
+     * Waits for the mutations issued by a changeset, through {@code system.mutations}, before the changeset is
+     * recorded as ran.
+     */
+    public boolean awaitMutations() {
+        return getBoolean(MUTATION_AWAIT, false);
+    }
+
+    /**
+     * Time in seconds to wait for the mutations of a changeset, after which the changeset fails.
+     */
+    public int mutationTimeoutSeconds() {
+        return getInt(MUTATION_TIMEOUT_SECONDS, 3600);
+    }
+
+    /**
+     * Delay in milliseconds between two reads of {@code system.mutations}.
+     */
+    public int mutationPollMillis() {
+        return getInt(MUTATION_POLL_MILLIS, 1000);
+    }
+
+    /**
+     * Runs consecutive update changes of a changeset on the same table as a single {@code ALTER TABLE} with one
+     * {@code UPDATE} command each, so that every part is rewritten once.
+     */
+    public boolean coalesceUpdates() {
+        return getBoolean(MUTATION_COALESCE_UPDATES, false);
+    }
+
+    /**
+     * Runs update changes as lightweight {@code UPDATE} statements when the server and the table support them,
+     * and as {@code ALTER TABLE ... UPDATE} mutations otherwise.
+     */
+    public boolean lightweightUpdates() {
+        return getBoolean(MUTATION_LIGHTWEIGHT_UPDATES, true);
+    }
+
+    /**
+     * Runs delete changes as lightweight {@code DELETE FROM} statements when the server supports them, and as
+     * {@code ALTER TABLE ... DELETE} mutations otherwise.
+     */
+    public boolean lightweightDeletes() {
+        return getBoolean(MUTATION_LIGHTWEIGHT_DELETES, true);
+    }
+
+    /**
+     * Number of partitions an update mutation is run on at a time, waiting for them before the next ones and
+     * recording the finished partitions. {@code 0} runs the mutation on the whole table at once.
+     */
+    public int mutationPartitionsPerBatch() {
+        return getInt(MUTATION_PARTITIONS_PER_BATCH, 0);
+    }
+
+    /**
+     * Number of unfinished mutations of a table above which a new mutation of the table waits. {@code 0} does
+     * not limit them.
+     */
+    public int maxPendingMutationsPerTable() {
+        return getInt(MUTATION_MAX_PENDING_PER_TABLE, 0);
+    }
+
+    /**
+     * Number of unfinished mutations of the server, or of the cluster, above which a new mutation waits.
+     * {@code 0} does not limit them.
+     */
+    public int maxPendingMutationsTotal() {
+        return getInt(MUTATION_MAX_PENDING_TOTAL, 0);
+    }
+
+    /**
+     * Number of rows of insert and loadData changes streamed in one request. {@code 0} leaves the inserts to
+     * Liquibase.
+     */
+    public int insertBatchRows() {
+        return getInt(INSERT_BATCH_ROWS, 0);
+    }
+
+    /**
+     * Number of insert requests sent at the same time.
+     */
+    public int insertParallelSenders() {
+        return Math.max(1, getInt(INSERT_PARALLEL_SENDERS, 1));
+    }
+
+    /**
+     * Sends an {@code insert_deduplication_token} derived from the changeset with every INSERT of a changeset, so
+     * that the blocks a failed changeset inserted are dropped when it is run again.
+     */
+    public boolean insertDeduplicationTokens() {
+        return getBoolean(INSERT_DEDUPLICATION_TOKENS, false);
+    }
+
+    /**
+     * Percentage of the {@code parts_to_delay_insert} of a table from which the batches of a bulk insert wait for
+     * the merges of the table. {@code 0} does not throttle the inserts.
+     */
+    public int insertThrottlePartsPercent() {
+        return getInt(INSERT_THROTTLE_PARTS_PERCENT, 0);
+    }
+
+    /**
+     * Interval in milliseconds between two reads of the part counts of a throttled table.
+     */
+    public int insertThrottlePollMillis() {
+        return getInt(INSERT_THROTTLE_POLL_MILLIS, 1000);
+    }
+
+    /**
+     * Time in seconds a batch waits for the merges of a throttled table before it is inserted anyway.
+     */
+    public int insertThrottleTimeoutSeconds() {
+        return getInt(INSERT_THROTTLE_TIMEOUT_SECONDS, 600);
+    }
+
+    /**
+     * Number of attempts of an idempotent statement failing with a transient ClickHouse error, like
+     * {@code TOO_MANY_PARTS} or {@code KEEPER_EXCEPTION}. {@code 1} runs every statement once.
+     */
+    public int retryMaxAttempts() {
+        return Math.max(1, getInt(RETRY_MAX_ATTEMPTS, 1));
+    }
+
+    /**
+     * First delay in milliseconds before a statement is retried. Every further attempt doubles the delay up to
+     * {@link #retryBackoffMaxMillis()}, overload errors start from a longer delay, and each delay is randomized
+     * between its half and its full value.
+     */
+    public int retryBackoffInitialMillis() {
+        return getInt(RETRY_BACKOFF_INITIAL_MILLIS, 1000);
+    }
+
+    /**
+     * Upper bound in milliseconds of the delay before a statement is retried.
+     */
+    public int retryBackoffMaxMillis() {
+        return getInt(RETRY_BACKOFF_MAX_MILLIS, 30000);
+    }
+
+    /**
+     * Lifetime of the changelog lock in seconds. The holder renews it in the background, and a lock which has
+     * not been renewed for that long is taken over by the next waiter. {@code 0} keeps the lock until it is
+     * released.
+     */
+    public int lockLeaseSeconds() {
+        return getInt(LOCK_LEASE_SECONDS, 0);
+    }
+
+    /**
+     * First delay in milliseconds between two attempts to acquire a taken changelog lock. Every further attempt
+     * doubles the delay up to {@link #lockBackoffMaxMillis()}, and each delay is randomized between its half and
+     * its full value. {@code 0} polls at Liquibase's fixed changelog lock recheck interval.
+     */
+    public int lockBackoffInitialMillis() {
+        return getInt(LOCK_BACKOFF_INITIAL_MILLIS, 0);
+    }
+
+    /**
+     * Upper bound in milliseconds of the delay between two attempts to acquire a taken changelog lock.
+     */
+    public int lockBackoffMaxMillis() {
+        return getInt(LOCK_BACKOFF_MAX_MILLIS, 30000);
+    }
+
+    /**
+     * Serves the processes waiting for the changelog lock in arrival order: each waiter takes a ticket in a
+     * queue table next to the lock table, and only the oldest ticket tries to acquire the lock.
+     */
+    public boolean lockFairQueue() {
+        return getBoolean(LOCK_FAIR_QUEUE, false);
+    }
+
+    /**
+     * Engine of the standalone DATABASECHANGELOGLOCK table, {@value #COLLAPSING_MERGE_TREE} or
+     * {@value #EMBEDDED_ROCKS_DB}. The cluster lock table always uses KeeperMap.
+     */
+    public String lockEngine() {
+        String engine = config.hasPath(LOCK_ENGINE) ? config.getString(LOCK_ENGINE) : COLLAPSING_MERGE_TREE;
+        if (!engine.equals(COLLAPSING_MERGE_TREE) && !engine.equals(EMBEDDED_ROCKS_DB)) {
+            throw new IllegalArgumentException("Unsupported " + LOCK_ENGINE + ": " + engine);
+        }
+        return engine;
+    }
+
+    /**
+     * Tells whether the standalone lock table keeps a single row per key, so that it is read without FINAL.
+     */
+    public boolean keyValueLockTable() {
+        return lockEngine().equals(EMBEDDED_ROCKS_DB);
+    }
+
+    private int getInt(String path, int defaultValue) {
+        return config.hasPath(path) ? config.getInt(path) : defaultValue;
+    }
+
+    private boolean getBoolean(String path, boolean defaultValue) {
+        return config.hasPath(path) ? config.getBoolean(path) : defaultValue;
+    }
+}
@@ -46,6 +46,7 @@ public final class ParamsLoader {
     private static final String CONF_FILE =
         System.getProperty("liquibase.clickhouse.configfile", "liquibaseClickhouse");
     private static LiquibaseClickHouseConfig liquibaseClickhouseProperties = null;
+    private static ExtensionOptions extensionOptions = null;
 
     private static final Set<String> VALID_PROPERTIES =
         new HashSet<>(Arrays.asList("clusterName", "tableZooKeeperPathPrefix"));
@@ -142,4 +143,16 @@ public final class ParamsLoader {
 
         return result;
     }
+
+    public static ExtensionOptions getExtensionOptions() {
+        if (extensionOptions != null) {
+            return extensionOptions;
+        }
+        extensionOptions = getExtensionOptions(CONF_FILE);
+        return extensionOptions;
+    }
+
+    public static ExtensionOptions getExtensionOptions(String configFile) {
+        return ExtensionOptions.of(ConfigFactory.load(configFile));
+    }
 }
@@ -21,6 +21,8 @@
 package liquibase.ext.clickhouse.sqlgenerator;
 
 import liquibase.database.Database;
+import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.ParamsLoader;
 import liquibase.sql.Sql;
 import liquibase.sqlgenerator.SqlGeneratorFactory;
 import liquibase.statement.core.RawSqlStatement;
@@ -44,4 +46,13 @@ public final class SqlGeneratorUtil {
         }
         return allSqlStatements.toArray(new Sql[0]);
     }
+
+    /**
+     * Returns the given {@code system} table, read from every replica of the cluster in cluster mode.
+     */
+    public static String systemTable(String table) {
+        return ParamsLoader.getLiquibaseClickhouseProperties() instanceof ClusterConfig clusterConfig
+                   ? String.format("clusterAllReplicas('%s', system.%s)", clusterConfig.clusterName(), table)
+                   : "system." + table;
+    }
 }
@@ -0,0 +1,77 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changelog;
+
+import liquibase.database.Database;
+import liquibase.exception.ValidationErrors;
+import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+import liquibase.ext.clickhouse.statement.CoalescedUpdateStatement;
+import liquibase.sql.Sql;
+import liquibase.sql.UnparsedSql;
+import liquibase.sqlgenerator.SqlGeneratorChain;
+import liquibase.sqlgenerator.core.AbstractSqlGenerator;
+import liquibase.statement.core.UpdateStatement;
+import liquibase.structure.core.Relation;
+import liquibase.structure.core.Table;
+
+import java.util.stream.Collectors;
+
+public class CoalescedUpdateGeneratorClickHouse extends AbstractSqlGenerator<CoalescedUpdateStatement> {
+
+    private final UpdateGeneratorClickhouse updateGenerator = new UpdateGeneratorClickhouse();
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_DATABASE;
+    }
+
+    @Override
+    public boolean supports(CoalescedUpdateStatement statement, Database database) {
+        return database instanceof ClickHouseDatabase;
+    }
+
+    @Override
+    public ValidationErrors validate(
+        CoalescedUpdateStatement statement, Database database, SqlGeneratorChain<CoalescedUpdateStatement> chain
+    ) {
+        ValidationErrors validationErrors = new ValidationErrors();
+        if (statement.getUpdates().isEmpty()) {
+            validationErrors.addError("No update to run");
+        }
+        return validationErrors;
+    }
+
+    @Override
+    public Sql[] generateSql(
+        CoalescedUpdateStatement statement, Database database, SqlGeneratorChain<CoalescedUpdateStatement> chain
+    ) {
+        UpdateStatement first = statement.getUpdates().get(0);
+        String commands = statement.getUpdates().stream()
+                              .map(update -> updateGenerator.generateUpdateCommand(update, database))
+                              .collect(Collectors.joining(", "));
+        String sql = "ALTER TABLE "
+                         + database.escapeTableName(
+                             first.getCatalogName(), first.getSchemaName(), first.getTableName())
+                         + " " + commands;
+        Relation table = new Table().setName(first.getTableName())
+                             .setSchema(first.getCatalogName(), first.getSchemaName());
+        return new Sql[] {new UnparsedSql(sql, table)};
+    }
+}
@@ -0,0 +1,80 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changelog;
+
+import liquibase.database.Database;
+import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.ext.clickhouse.sqlgenerator.OnClusterTemplate;
+import liquibase.ext.clickhouse.statement.PartitionedDeleteStatement;
+import liquibase.sql.Sql;
+import liquibase.sql.UnparsedSql;
+import liquibase.sqlgenerator.SqlGeneratorChain;
+import liquibase.sqlgenerator.core.DeleteGenerator;
+import liquibase.statement.core.DeleteStatement;
+
+import static liquibase.util.SqlUtil.replacePredicatePlaceholders;
+
+public class DeleteGeneratorClickHouse extends DeleteGenerator {
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_DATABASE;
+    }
+
+    @Override
+    public boolean supports(DeleteStatement statement, Database database) {
+        return database instanceof ClickHouseDatabase;
+    }
+
+    @Override
+    public Sql[] generateSql(DeleteStatement statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
+        String tableName = database.escapeTableName(
+            statement.getCatalogName(), statement.getSchemaName(), statement.getTableName()
+        );
+        String onCluster = ParamsLoader.getLiquibaseClickhouseProperties().accept(new OnClusterTemplate());
+        String partition = statement instanceof PartitionedDeleteStatement partitioned
+                               ? "IN PARTITION " + partitioned.getPartition() + " "
+                               : "";
+        // lightweight deletes need a WHERE clause
+        String where = statement.getWhere() == null
+                           ? "1"
+                           : replacePredicatePlaceholders(
+                               database, statement.getWhere(), statement.getWhereColumnNames(),
+                               statement.getWhereParameters()
+                           );
+
+        String sql = usesLightweightDelete((ClickHouseDatabase) database, statement)
+                         ? String.format("DELETE FROM %s %s%sWHERE %s", tableName, onCluster, partition, where)
+                         : String.format("ALTER TABLE %s %sDELETE %sWHERE %s", tableName, onCluster, partition, where);
+        return new Sql[] {
+            new UnparsedSql(sql, getAffectedTable(statement))
+        };
+    }
+
+    /**
+     * Lightweight deletes accept an {@code IN PARTITION} clause since 24.8, older servers get a mutation instead.
+     */
+    private static boolean usesLightweightDelete(ClickHouseDatabase database, DeleteStatement statement) {
+        return database.usesLightweightDeletes()
+                   && (!(statement instanceof PartitionedDeleteStatement)
+                           || database.getServerFeatures().isAtLeast(24, 8));
+    }
+}
@@ -0,0 +1,87 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changelog;
+
+import liquibase.database.Database;
+import liquibase.exception.ValidationErrors;
+import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+import liquibase.ext.clickhouse.statement.InsertFileStatement;
+import liquibase.sql.Sql;
+import liquibase.sql.UnparsedSql;
+import liquibase.sqlgenerator.SqlGeneratorChain;
+import liquibase.sqlgenerator.core.AbstractSqlGenerator;
+import liquibase.structure.core.Relation;
+import liquibase.structure.core.Table;
+
+import java.util.stream.Collectors;
+
+/**
+ * Describes a file insert as the {@code INSERT ... FROM INFILE} of clickhouse-client, which is what updateSQL
+ * writes. The executor streams the file itself instead of running this statement.
+ */
+public class InsertFileGeneratorClickHouse extends AbstractSqlGenerator<InsertFileStatement> {
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_DATABASE;
+    }
+
+    @Override
+    public boolean supports(InsertFileStatement statement, Database database) {
+        return database instanceof ClickHouseDatabase;
+    }
+
+    @Override
+    public ValidationErrors validate(
+        InsertFileStatement statement, Database database, SqlGeneratorChain<InsertFileStatement> chain
+    ) {
+        ValidationErrors validationErrors = new ValidationErrors();
+        validationErrors.checkRequiredField("tableName", statement.getTableName());
+        validationErrors.checkRequiredField("resource", statement.getResource());
+        validationErrors.checkRequiredField("format", statement.getFormat());
+        return validationErrors;
+    }
+
+    @Override
+    public Sql[] generateSql(
+        InsertFileStatement statement, Database database, SqlGeneratorChain<InsertFileStatement> chain
+    ) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ")
+                                .append(database.escapeTableName(
+                                    statement.getCatalogName(), null, statement.getTableName()));
+        if (!statement.getColumns().isEmpty()) {
+            sql.append(" (")
+                .append(statement.getColumns().stream()
+                            .map(column -> database.escapeColumnName(
+                                statement.getCatalogName(), null, statement.getTableName(), column))
+                            .collect(Collectors.joining(", ")))
+                .append(")");
+        }
+        sql.append(" FROM INFILE '")
+            .append(database.escapeStringForDatabase(statement.getResource().getPath()))
+            .append("'");
+        if (statement.getCompression() != null) {
+            sql.append(" COMPRESSION '").append(statement.getCompression()).append("'");
+        }
+        sql.append(" FORMAT ").append(statement.getFormat());
+        Relation table = new Table().setName(statement.getTableName()).setSchema(statement.getCatalogName(), null);
+        return new Sql[] {new UnparsedSql(sql.toString(), table)};
+    }
+}
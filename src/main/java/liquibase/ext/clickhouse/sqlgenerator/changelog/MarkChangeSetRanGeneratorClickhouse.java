@@ -23,6 +23,7 @@ import liquibase.ChecksumVersion;
 import liquibase.Scope;
 import liquibase.changelog.ChangeLogHistoryServiceFactory;
 import liquibase.changelog.ChangeSet;
+import liquibase.changelog.RanChangeSet;
 import liquibase.database.Database;
 import liquibase.exception.LiquibaseException;
 import liquibase.exception.UnexpectedLiquibaseException;
@@ -32,8 +33,10 @@ import liquibase.ext.clickhouse.sqlgenerator.SqlGeneratorUtil;
 import liquibase.ext.clickhouse.sqlgenerator.changelog.template.UpdateTemplate;
 import liquibase.sql.Sql;
 import liquibase.sqlgenerator.SqlGeneratorChain;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
 import liquibase.sqlgenerator.core.MarkChangeSetRanGenerator;
 import liquibase.statement.DatabaseFunction;
+import liquibase.statement.core.InsertStatement;
 import liquibase.statement.core.MarkChangeSetRanStatement;
 import liquibase.util.StringUtil;
 import org.apache.commons.lang3.StringUtils;
@@ -52,6 +55,16 @@ public class MarkChangeSetRanGeneratorClickhouse extends MarkChangeSetRanGenerat
         }
     }
 
+    private static String getPreviousTag(ChangeSet changeSet, Database database) {
+        try {
+            RanChangeSet ranChangeSet = Scope.getCurrentScope().getSingleton(ChangeLogHistoryServiceFactory.class)
+                .getChangeLogService(database).getRanChangeSet(changeSet);
+            return ranChangeSet == null ? null : ranChangeSet.getTag();
+        } catch (LiquibaseException e) {
+            throw new UnexpectedLiquibaseException(e);
+        }
+    }
+
     private static String getCommentsColumn(ChangeSet changeSet) {
         return StringUtil.limitSize(StringUtils.trimToEmpty(changeSet.getComments()), 250);
     }
@@ -71,17 +84,54 @@ public class MarkChangeSetRanGeneratorClickhouse extends MarkChangeSetRanGenerat
         MarkChangeSetRanStatement statement, Database database, SqlGeneratorChain sqlGeneratorChain
     ) {
         var execType = statement.getExecType();
-        if (Set.of(ChangeSet.ExecType.FAILED, ChangeSet.ExecType.SKIPPED).contains(execType) || !execType.ranBefore) {
+        if (Set.of(ChangeSet.ExecType.FAILED, ChangeSet.ExecType.SKIPPED).contains(execType)) {
             return super.generateSql(statement, database, sqlGeneratorChain);
         }
+        if (!execType.ranBefore || ParamsLoader.getExtensionOptions().appendOnlyReruns()) {
+            var insert = generateInsertStatement(statement, database);
+            return SqlGeneratorFactory.getInstance().generateSql(insert, database);
+        }
         // dealing with an update case
         ChangeSet changeSet = statement.getChangeSet();
         var config = ParamsLoader.getLiquibaseClickhouseProperties();
-        var map = new EnumMap<>(ChangelogColumns.class);
+        var map = getRunColumns(statement, database);
+        var query = config.accept(new UpdateTemplate(database, map, changeSet.getId()));
+        return SqlGeneratorUtil.generateSql(database, query);
+    }
+
+    /**
+     * Builds the DATABASECHANGELOG row of a changeset that has not been run before, or of a re-run when
+     * {@code changelog.appendOnlyReruns} is set. It is also used by
+     * {@link liquibase.ext.clickhouse.changelog.ClickHouseChangeLogHistoryService} to batch several rows
+     * into one INSERT.
+     */
+    public InsertStatement generateInsertStatement(MarkChangeSetRanStatement statement, Database database) {
+        ChangeSet changeSet = statement.getChangeSet();
+        var map = new EnumMap<ChangelogColumns, Object>(ChangelogColumns.class);
+        map.put(ChangelogColumns.ID, changeSet.getId());
+        map.put(ChangelogColumns.AUTHOR, changeSet.getAuthor());
+        map.put(ChangelogColumns.FILENAME, changeSet.getFilePath());
+        map.putAll(getRunColumns(statement, database));
+        if (statement.getExecType().ranBefore && map.get(ChangelogColumns.TAG) == null) {
+            // the new row supersedes the previous one, so it has to keep its tag
+            map.put(ChangelogColumns.TAG, getPreviousTag(changeSet, database));
+        }
+        var insert = new InsertStatement(
+            database.getLiquibaseCatalogName(),
+            database.getLiquibaseSchemaName(),
+            database.getDatabaseChangeLogTableName()
+        );
+        map.forEach((column, value) -> insert.addColumnValue(column.toString(), value));
+        return insert;
+    }
+
+    private EnumMap<ChangelogColumns, Object> getRunColumns(MarkChangeSetRanStatement statement, Database database) {
+        ChangeSet changeSet = statement.getChangeSet();
+        var map = new EnumMap<ChangelogColumns, Object>(ChangelogColumns.class);
         map.put(ChangelogColumns.DATEEXECUTED, new DatabaseFunction(database.getCurrentDateTimeFunction()));
         map.put(ChangelogColumns.ORDEREXECUTED, getOrderExecutedColumn(database));
         map.put(ChangelogColumns.MD5SUM, changeSet.generateCheckSum(ChecksumVersion.latest()).toString());
-        map.put(ChangelogColumns.EXECTYPE, execType.value);
+        map.put(ChangelogColumns.EXECTYPE, statement.getExecType().value);
         map.put(ChangelogColumns.DEPLOYMENT_ID, Scope.getCurrentScope().getDeploymentId());
         map.put(ChangelogColumns.COMMENTS, getCommentsColumn(changeSet));
         map.put(ChangelogColumns.CONTEXTS, getContextsColumn(changeSet));
@@ -89,7 +139,6 @@ public class MarkChangeSetRanGeneratorClickhouse extends MarkChangeSetRanGenerat
         map.put(ChangelogColumns.LIQUIBASE, getLiquibaseBuildVersion());
         map.put(ChangelogColumns.DESCRIPTION, StringUtil.limitSize(changeSet.getDescription(), 250));
         map.put(ChangelogColumns.TAG, getTagFromChangeset(changeSet));
-        var query = config.accept(new UpdateTemplate(database, map, changeSet.getId()));
-        return SqlGeneratorUtil.generateSql(database, query);
+        return map;
     }
 }
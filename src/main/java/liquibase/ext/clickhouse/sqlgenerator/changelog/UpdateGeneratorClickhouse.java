@@ -22,9 +22,7 @@ package liquibase.ext.clickhouse.sqlgenerator.changelog;
 import liquibase.database.Database;
 import liquibase.datatype.DataTypeFactory;
 import liquibase.ext.clickhouse.database.ClickHouseDatabase;
-import liquibase.ext.clickhouse.params.LiquibaseClickHouseConfig;
-import liquibase.ext.clickhouse.params.ParamsLoader;
-import liquibase.ext.clickhouse.params.StandaloneConfig;
+import liquibase.ext.clickhouse.statement.PartitionedUpdateStatement;
 import liquibase.sql.Sql;
 import liquibase.sql.UnparsedSql;
 import liquibase.sqlgenerator.SqlGeneratorChain;
@@ -51,20 +49,39 @@ public class UpdateGeneratorClickhouse extends UpdateGenerator {
     public Sql[] generateSql(
         UpdateStatement statement, Database database, SqlGeneratorChain sqlGeneratorChain
     ) {
-        LiquibaseClickHouseConfig properties = ParamsLoader.getLiquibaseClickhouseProperties();
-        if (properties instanceof StandaloneConfig) {
+        if (!isLiquibaseTable(statement, database)
+                && !(statement instanceof PartitionedUpdateStatement)
+                && ((ClickHouseDatabase) database).usesLightweightUpdates(statement)) {
             return super.generateSql(statement, database, sqlGeneratorChain);
         }
-        return generateSqlForCluster(statement, database);
+        return generateMutation(statement, database);
     }
 
-    private Sql[] generateSqlForCluster(UpdateStatement statement, Database database) {
-        StringBuilder sql = new StringBuilder("ALTER TABLE ")
-            .append(database.escapeTableName(
-                statement.getCatalogName(), statement.getSchemaName(),
-                statement.getTableName()
-            ))
-            .append(" UPDATE");
+    /**
+     * The Liquibase tables are created without the block columns lightweight updates need.
+     */
+    private static boolean isLiquibaseTable(UpdateStatement statement, Database database) {
+        return statement.getTableName().equalsIgnoreCase(database.getDatabaseChangeLogTableName())
+                   || statement.getTableName().equalsIgnoreCase(database.getDatabaseChangeLogLockTableName());
+    }
+
+    private Sql[] generateMutation(UpdateStatement statement, Database database) {
+        String sql = "ALTER TABLE "
+                         + database.escapeTableName(
+                             statement.getCatalogName(), statement.getSchemaName(),
+                             statement.getTableName()
+                         )
+                         + " " + generateUpdateCommand(statement, database);
+        return new Sql[] {
+            new UnparsedSql(sql, getAffectedTable(statement))
+        };
+    }
+
+    /**
+     * Returns the {@code UPDATE ... WHERE ...} command of an {@code ALTER TABLE} statement.
+     */
+    String generateUpdateCommand(UpdateStatement statement, Database database) {
+        StringBuilder sql = new StringBuilder("UPDATE");
         for (String column: statement.getNewColumnValues().keySet()) {
             sql.append(" ")
                 .append(database.escapeColumnName(
@@ -80,6 +97,11 @@ public class UpdateGeneratorClickhouse extends UpdateGenerator {
         if (lastComma >= 0) {
             sql.deleteCharAt(lastComma);
         }
+        if (statement instanceof PartitionedUpdateStatement partitioned) {
+            sql.append(" IN PARTITION ID '")
+                .append(database.escapeStringForDatabase(partitioned.getPartitionId()))
+                .append("'");
+        }
         if (statement.getWhereClause() != null) {
             sql.append(" WHERE ").append(
                 replacePredicatePlaceholders(
@@ -87,10 +109,7 @@ public class UpdateGeneratorClickhouse extends UpdateGenerator {
                     statement.getWhereParameters()
                 ));
         }
-
-        return new Sql[] {
-            new UnparsedSql(sql.toString(), getAffectedTable(statement))
-        };
+        return sql.toString();
     }
 
     /**
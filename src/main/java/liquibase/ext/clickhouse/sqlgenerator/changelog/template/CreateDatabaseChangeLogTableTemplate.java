@@ -43,15 +43,27 @@ import static liquibase.ext.clickhouse.sqlgenerator.changelog.ChangelogColumns.T
 
 public class CreateDatabaseChangeLogTableTemplate extends LiquibaseSqlTemplate<String> {
 
+    /**
+     * Version column of the standalone changelog table, the row with the highest version of a changeset wins.
+     * It is filled by the server, so that the inserts do not need to know about it.
+     */
+    public static final String VERSION = "VERSION";
+
     private final Database database;
+    private final String tableName;
     private final OnClusterTemplate onClusterVisitor;
 
     public CreateDatabaseChangeLogTableTemplate(Database database) {
+        this(database, database.getDatabaseChangeLogTableName());
+    }
+
+    public CreateDatabaseChangeLogTableTemplate(Database database, String tableName) {
         this.database = database;
+        this.tableName = tableName;
         this.onClusterVisitor = new OnClusterTemplate();
     }
 
-    private String generateFirstPart(LiquibaseClickHouseConfig clickHouseConfig) {
+    private String generateFirstPart(LiquibaseClickHouseConfig clickHouseConfig, String additionalColumns) {
 
         return String.format(
             "CREATE TABLE IF NOT EXISTS `%s`.%s "
@@ -84,25 +96,28 @@ public class CreateDatabaseChangeLogTableTemplate extends LiquibaseSqlTemplate<S
                 + LABELS
                 + " Nullable(String),"
                 + DEPLOYMENT_ID
-                + " Nullable(String)) ",
+                + " Nullable(String)"
+                + additionalColumns
+                + ") ",
             database.getLiquibaseCatalogName(),
-            database.getDatabaseChangeLogTableName()
+            tableName
         );
     }
 
     @Override
     public String visit(StandaloneConfig standaloneConfig) {
-        return generateFirstPart(standaloneConfig)
+        String versionColumn = String.format(",%s UInt64 DEFAULT toUnixTimestamp64Nano(now64(9))", VERSION);
+        return generateFirstPart(standaloneConfig, versionColumn)
                    + String.format(
-            "ENGINE = ReplacingMergeTree() ORDER BY (%s, %s, %s)", ID, AUTHOR, FILENAME);
+            "ENGINE = ReplacingMergeTree(%s) ORDER BY (%s, %s, %s)", VERSION, ID, AUTHOR, FILENAME);
     }
 
     @Override
     public String visit(ClusterConfig clusterConfig) {
-        return generateFirstPart(clusterConfig)
+        return generateFirstPart(clusterConfig, "")
                    + String.format(
             "ENGINE = KeeperMap('%s/%s') PRIMARY KEY (%s)",
-            clusterConfig.tableZooKeeperPathPrefix(), database.getDatabaseChangeLogTableName(), ID
+            clusterConfig.tableZooKeeperPathPrefix(), tableName, ID
         );
     }
 }
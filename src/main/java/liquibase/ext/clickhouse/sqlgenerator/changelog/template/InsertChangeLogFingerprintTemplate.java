@@ -0,0 +1,49 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changelog.template;
+
+import liquibase.database.Database;
+import liquibase.ext.clickhouse.params.LiquibaseClickHouseConfig;
+import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
+
+/**
+ * Replaces the stored fingerprint of the applied changesets.
+ */
+public class InsertChangeLogFingerprintTemplate extends LiquibaseSqlTemplate<String> {
+
+    private final Database database;
+    private final String fingerprint;
+
+    public InsertChangeLogFingerprintTemplate(Database database, String fingerprint) {
+        this.database = database;
+        this.fingerprint = fingerprint;
+    }
+
+    @Override
+    public String visitDefault(LiquibaseClickHouseConfig config) {
+        return String.format(
+            "INSERT INTO `%s`.%s%s (ID, FINGERPRINT) VALUES (1, %s)",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogTableName(),
+            CreateChangeLogFingerprintTableTemplate.SUFFIX,
+            escape(database, fingerprint)
+        );
+    }
+}
@@ -0,0 +1,59 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changelog.template;
+
+import liquibase.database.Database;
+import liquibase.ext.clickhouse.params.LiquibaseClickHouseConfig;
+import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Records partitions a partition-split mutation is done with.
+ */
+public class InsertMutationProgressTemplate extends LiquibaseSqlTemplate<String> {
+
+    private final Database database;
+    private final String mutation;
+    private final List<String> partitionIds;
+
+    public InsertMutationProgressTemplate(Database database, String mutation, List<String> partitionIds) {
+        this.database = database;
+        this.mutation = mutation;
+        this.partitionIds = partitionIds;
+    }
+
+    @Override
+    public String visitDefault(LiquibaseClickHouseConfig config) {
+        return String.format(
+            "INSERT INTO `%s`.%s%s (ID, MUTATION, PARTITION_ID) VALUES %s",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogTableName(),
+            CreateMutationProgressTableTemplate.SUFFIX,
+            partitionIds.stream()
+                .map(partitionId -> String.format("(%s, %s, %s)",
+                    escape(database, mutation + ":" + partitionId),
+                    escape(database, mutation),
+                    escape(database, partitionId)))
+                .collect(Collectors.joining(", "))
+        );
+    }
+}
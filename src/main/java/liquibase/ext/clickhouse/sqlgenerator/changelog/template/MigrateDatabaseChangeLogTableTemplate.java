@@ -0,0 +1,75 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changelog.template;
+
+import liquibase.database.Database;
+import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.StandaloneConfig;
+import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changelog.ChangelogColumns;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static liquibase.ext.clickhouse.sqlgenerator.changelog.ChangelogColumns.DATEEXECUTED;
+import static liquibase.ext.clickhouse.sqlgenerator.changelog.ChangelogColumns.ORDEREXECUTED;
+import static liquibase.ext.clickhouse.sqlgenerator.changelog.template.CreateDatabaseChangeLogTableTemplate.VERSION;
+
+/**
+ * Moves a standalone changelog table created without the version column to the current schema. The engine
+ * parameters can't be altered, so the rows are copied to a new table which then takes the place of the old one.
+ */
+public class MigrateDatabaseChangeLogTableTemplate extends LiquibaseSqlTemplate<List<String>> {
+
+    private final Database database;
+
+    public MigrateDatabaseChangeLogTableTemplate(Database database) {
+        this.database = database;
+    }
+
+    @Override
+    public List<String> visit(StandaloneConfig standaloneConfig) {
+        String catalog = database.getLiquibaseCatalogName();
+        String table = database.getDatabaseChangeLogTableName();
+        String newTable = table + "_MIGRATION";
+        String columns = Arrays.stream(ChangelogColumns.values())
+                             .map(ChangelogColumns::toString)
+                             .collect(Collectors.joining(", "));
+        return List.of(
+            // leftovers of an interrupted migration
+            String.format("DROP TABLE IF EXISTS `%s`.%s", catalog, newTable),
+            new CreateDatabaseChangeLogTableTemplate(database, newTable).visit(standaloneConfig),
+            // the existing rows get versions following their execution order
+            String.format(
+                "INSERT INTO `%s`.%s (%s, %s) SELECT %s, toUnixTimestamp64Nano(%s) + %s FROM `%s`.%s",
+                catalog, newTable, columns, VERSION, columns, DATEEXECUTED, ORDEREXECUTED, catalog, table
+            ),
+            String.format("EXCHANGE TABLES `%s`.%s AND `%s`.%s", catalog, table, catalog, newTable),
+            String.format("DROP TABLE `%s`.%s", catalog, newTable)
+        );
+    }
+
+    @Override
+    public List<String> visit(ClusterConfig clusterConfig) {
+        // KeeperMap keeps a single row per key, there is nothing to migrate
+        return List.of();
+    }
+}
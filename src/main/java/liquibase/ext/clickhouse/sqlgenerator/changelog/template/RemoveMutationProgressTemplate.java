@@ -0,0 +1,62 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changelog.template;
+
+import liquibase.database.Database;
+import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.StandaloneConfig;
+import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
+
+/**
+ * Forgets the partitions of a finished partition-split mutation, so that a re-run of its changeset runs it again.
+ */
+public class RemoveMutationProgressTemplate extends LiquibaseSqlTemplate<String> {
+
+    private final Database database;
+    private final String mutation;
+
+    public RemoveMutationProgressTemplate(Database database, String mutation) {
+        this.database = database;
+        this.mutation = mutation;
+    }
+
+    @Override
+    public String visit(ClusterConfig clusterConfig) {
+        return String.format(
+            "ALTER TABLE `%s`.%s%s DELETE WHERE MUTATION = %s",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogTableName(),
+            CreateMutationProgressTableTemplate.SUFFIX,
+            escape(database, mutation)
+        );
+    }
+
+    @Override
+    public String visit(StandaloneConfig standaloneConfig) {
+        // a re-run of the changeset must not find the partitions of this run
+        return String.format(
+            "ALTER TABLE `%s`.%s%s DELETE WHERE MUTATION = %s SETTINGS mutations_sync = 1",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogTableName(),
+            CreateMutationProgressTableTemplate.SUFFIX,
+            escape(database, mutation)
+        );
+    }
+}
@@ -0,0 +1,57 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changelog.template;
+
+import liquibase.database.Database;
+import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.StandaloneConfig;
+import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
+
+/**
+ * Selects the stored fingerprint of the applied changesets.
+ */
+public class SelectChangeLogFingerprintTemplate extends LiquibaseSqlTemplate<String> {
+
+    private final Database database;
+
+    public SelectChangeLogFingerprintTemplate(Database database) {
+        this.database = database;
+    }
+
+    @Override
+    public String visit(ClusterConfig object) {
+        return String.format(
+            "SELECT FINGERPRINT FROM `%s`.%s%s WHERE ID = 1",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogTableName(),
+            CreateChangeLogFingerprintTableTemplate.SUFFIX
+        );
+    }
+
+    @Override
+    public String visit(StandaloneConfig object) {
+        return String.format(
+            "SELECT argMax(FINGERPRINT, UPDATED) FROM `%s`.%s%s WHERE ID = 1",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogTableName(),
+            CreateChangeLogFingerprintTableTemplate.SUFFIX
+        );
+    }
+}
@@ -0,0 +1,49 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changelog.template;
+
+import liquibase.database.Database;
+import liquibase.ext.clickhouse.params.LiquibaseClickHouseConfig;
+import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
+
+/**
+ * Selects the partitions a partition-split mutation is done with.
+ */
+public class SelectMutationProgressTemplate extends LiquibaseSqlTemplate<String> {
+
+    private final Database database;
+    private final String mutation;
+
+    public SelectMutationProgressTemplate(Database database, String mutation) {
+        this.database = database;
+        this.mutation = mutation;
+    }
+
+    @Override
+    public String visitDefault(LiquibaseClickHouseConfig config) {
+        return String.format(
+            "SELECT PARTITION_ID FROM `%s`.%s%s WHERE MUTATION = %s",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogTableName(),
+            CreateMutationProgressTableTemplate.SUFFIX,
+            escape(database, mutation)
+        );
+    }
+}
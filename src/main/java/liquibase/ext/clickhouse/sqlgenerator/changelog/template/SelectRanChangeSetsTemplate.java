@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changelog.template;
+
+import liquibase.database.Database;
+import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.StandaloneConfig;
+import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changelog.ChangelogColumns;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import static liquibase.ext.clickhouse.sqlgenerator.changelog.ChangelogColumns.AUTHOR;
+import static liquibase.ext.clickhouse.sqlgenerator.changelog.ChangelogColumns.DATEEXECUTED;
+import static liquibase.ext.clickhouse.sqlgenerator.changelog.ChangelogColumns.FILENAME;
+import static liquibase.ext.clickhouse.sqlgenerator.changelog.ChangelogColumns.ID;
+import static liquibase.ext.clickhouse.sqlgenerator.changelog.ChangelogColumns.ORDEREXECUTED;
+import static liquibase.ext.clickhouse.sqlgenerator.changelog.template.CreateDatabaseChangeLogTableTemplate.VERSION;
+
+/**
+ * Reads the current row of every changeset in execution order, with the changelog columns only. Replaced rows
+ * of the standalone table are skipped with {@code LIMIT 1 BY} rather than {@code FINAL}, so the result does not
+ * depend on merges.
+ */
+public class SelectRanChangeSetsTemplate extends LiquibaseSqlTemplate<String> {
+
+    private final Database database;
+    private final boolean hasVersionColumn;
+
+    public SelectRanChangeSetsTemplate(Database database, boolean hasVersionColumn) {
+        this.database = database;
+        this.hasVersionColumn = hasVersionColumn;
+    }
+
+    private static String columns() {
+        return Arrays.stream(ChangelogColumns.values())
+                   .map(ChangelogColumns::toString)
+                   .collect(Collectors.joining(", "));
+    }
+
+    @Override
+    public String visit(StandaloneConfig standaloneConfig) {
+        String newestFirst = hasVersionColumn
+                                 ? VERSION + " DESC"
+                                 : String.format("%s DESC, %s DESC", DATEEXECUTED, ORDEREXECUTED);
+        return String.format(
+            "SELECT * FROM (SELECT %s FROM %s.%s ORDER BY %s LIMIT 1 BY %s, %s, %s) ORDER BY %s ASC, %s ASC",
+            columns(),
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogTableName(),
+            newestFirst,
+            ID,
+            AUTHOR,
+            FILENAME,
+            DATEEXECUTED,
+            ORDEREXECUTED
+        );
+    }
+
+    @Override
+    public String visit(ClusterConfig clusterConfig) {
+        return String.format(
+            "SELECT %s FROM %s.%s ORDER BY %s ASC, %s ASC",
+            columns(),
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogTableName(),
+            DATEEXECUTED,
+            ORDEREXECUTED
+        );
+    }
+}
@@ -21,7 +21,6 @@ package liquibase.ext.clickhouse.sqlgenerator.changelog.template;
 
 import liquibase.database.Database;
 import liquibase.ext.clickhouse.params.LiquibaseClickHouseConfig;
-import liquibase.ext.clickhouse.params.StandaloneConfig;
 import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
 import liquibase.ext.clickhouse.sqlgenerator.changelog.ChangelogColumns;
 
@@ -39,9 +38,8 @@ public class TagDatabaseGeneratorTemplate extends LiquibaseSqlTemplate<String> {
 
     @Override
     public String visitDefault(LiquibaseClickHouseConfig object) {
-        boolean isStandalone = object instanceof StandaloneConfig;
         String alteredColumns = String.format("%s = %s", ChangelogColumns.TAG, escape(database, tagName));
-        String whereColumns = String.format("%s = %s", ChangelogColumns.ID, getIdSubQuery(isStandalone));
+        String whereColumns = String.format("%s = %s", ChangelogColumns.ID, getIdSubQuery());
         return String.format(
             "ALTER TABLE %s.%s UPDATE %s WHERE %s",
             database.getLiquibaseCatalogName(),
@@ -51,15 +49,15 @@ public class TagDatabaseGeneratorTemplate extends LiquibaseSqlTemplate<String> {
         );
     }
 
-    private String getIdSubQuery(boolean useFinal) {
+    private String getIdSubQuery() {
+        // replaced rows of a changeset are older than its current row, so FINAL is not needed
         return String.format(
-            "(SELECT %s FROM %s.%s %s ORDER BY %s DESC, %s DESC LIMIT 1)",
+            "(SELECT argMax(%s, (%s, %s)) FROM %s.%s)",
             ChangelogColumns.ID,
-            database.getLiquibaseCatalogName(),
-            database.getDatabaseChangeLogTableName(),
-            useFinal ? "FINAL" : "",
             ChangelogColumns.DATEEXECUTED,
-            ChangelogColumns.ORDEREXECUTED
+            ChangelogColumns.ORDEREXECUTED,
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogTableName()
         );
     }
 }
@@ -21,6 +21,7 @@ package liquibase.ext.clickhouse.sqlgenerator.changeloglock;
 
 import liquibase.database.Database;
 import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+import liquibase.ext.clickhouse.params.ClusterConfig;
 import liquibase.ext.clickhouse.params.LiquibaseClickHouseConfig;
 import liquibase.ext.clickhouse.params.ParamsLoader;
 import liquibase.ext.clickhouse.sqlgenerator.SqlGeneratorUtil;
@@ -53,6 +54,10 @@ public class InitializeDatabaseChangeLogLockClickHouse
         SqlGeneratorChain sqlGeneratorChain
     ) {
         LiquibaseClickHouseConfig properties = ParamsLoader.getLiquibaseClickhouseProperties();
+        if (properties instanceof ClusterConfig) {
+            // the KeeperMap lock record exists only while the lock is held
+            return new Sql[0];
+        }
 
         String clearDatabaseQuery = properties.accept(new TruncateTableTemplate(database));
 
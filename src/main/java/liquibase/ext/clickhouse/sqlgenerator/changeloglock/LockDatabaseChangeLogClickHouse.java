@@ -29,12 +29,26 @@ import liquibase.sqlgenerator.SqlGeneratorChain;
 import liquibase.sqlgenerator.core.LockDatabaseChangeLogGenerator;
 import liquibase.statement.core.LockDatabaseChangeLogStatement;
 
+import java.util.UUID;
+
 public class LockDatabaseChangeLogClickHouse extends LockDatabaseChangeLogGenerator {
 
     public LockDatabaseChangeLogClickHouse() {
         super();
     }
 
+    /**
+     * Tells processes apart on the same host, e.g. containers sharing a hostname.
+     */
+    private static final String PROCESS_ID = ProcessHandle.current().pid() + "-" + UUID.randomUUID();
+
+    /**
+     * Value of LOCKEDBY written by this process when it takes the lock.
+     */
+    public static String getLockedBy() {
+        return String.format("%s %s (%s) [%s]", hostname, hostDescription, hostaddress, PROCESS_ID);
+    }
+
     @Override
     public int getPriority() {
         return PRIORITY_DATABASE;
@@ -52,8 +66,11 @@ public class LockDatabaseChangeLogClickHouse extends LockDatabaseChangeLogGenera
         SqlGeneratorChain sqlGeneratorChain
     ) {
         var config = ParamsLoader.getLiquibaseClickhouseProperties();
-        String host = String.format("%s %s (%s)", hostname, hostDescription, hostaddress);
-        String lockQuery = config.accept(new LockTemplate(database, host));
+        // a lease is checked against the server clock, so it has to start at the current server time
+        String lockGranted = ParamsLoader.getExtensionOptions().lockLeaseSeconds() > 0
+                                 ? "now64()"
+                                 : ClickHouseDatabase.CURRENT_DATE_TIME_FUNCTION;
+        String lockQuery = config.accept(new LockTemplate(database, getLockedBy(), lockGranted));
         return SqlGeneratorUtil.generateSql(database, lockQuery);
     }
 }
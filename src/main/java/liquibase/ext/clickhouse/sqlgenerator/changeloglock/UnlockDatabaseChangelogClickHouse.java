@@ -49,7 +49,10 @@ public class UnlockDatabaseChangelogClickHouse extends UnlockDatabaseChangeLogGe
         SqlGeneratorChain sqlGeneratorChain
     ) {
         var config = ParamsLoader.getLiquibaseClickhouseProperties();
-        String unlockQuery = config.accept(new UnlockTemplate(database));
+        // a process which lost its lock to another must not release the lock of the new holder
+        String unlockQuery = config.accept(
+            new UnlockTemplate(database, LockDatabaseChangeLogClickHouse.getLockedBy())
+        );
 
         return SqlGeneratorUtil.generateSql(database, unlockQuery);
     }
@@ -21,6 +21,7 @@ package liquibase.ext.clickhouse.sqlgenerator.changeloglock.template;
 
 import liquibase.database.Database;
 import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.ParamsLoader;
 import liquibase.ext.clickhouse.params.StandaloneConfig;
 import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
 import liquibase.ext.clickhouse.sqlgenerator.OnClusterTemplate;
@@ -28,15 +29,34 @@ import liquibase.ext.clickhouse.sqlgenerator.OnClusterTemplate;
 public class CreateDatabaseChangeLogLockTableTemplate extends LiquibaseSqlTemplate<String> {
 
     private final Database database;
+    private final String tableName;
     private final OnClusterTemplate onClusterTemplate;
 
     public CreateDatabaseChangeLogLockTableTemplate(Database database) {
+        this(database, database.getDatabaseChangeLogLockTableName());
+    }
+
+    public CreateDatabaseChangeLogLockTableTemplate(Database database, String tableName) {
         this.database = database;
+        this.tableName = tableName;
         this.onClusterTemplate = new OnClusterTemplate();
     }
 
     @Override
     public String visit(StandaloneConfig standaloneConfig) {
+        if (ParamsLoader.getExtensionOptions().keyValueLockTable()) {
+            return String.format(
+                "CREATE TABLE IF NOT EXISTS `%s`.%s "
+                    + "("
+                    + "ID Int64,"
+                    + "LOCKED UInt8,"
+                    + "LOCKGRANTED Nullable(DateTime64),"
+                    + "LOCKEDBY Nullable(String)"
+                    + ") "
+                    + "ENGINE EmbeddedRocksDB PRIMARY KEY (ID)",
+                database.getLiquibaseCatalogName(), tableName
+            );
+        }
         return String.format(
             "CREATE TABLE IF NOT EXISTS `%s`.%s "
                 + "("
@@ -47,7 +67,7 @@ public class CreateDatabaseChangeLogLockTableTemplate extends LiquibaseSqlTempla
                 + "LOCKEDBY Nullable(String)"
                 + ") "
                 + "ENGINE CollapsingMergeTree(SIGN) ORDER BY (ID, LOCKED)",
-            database.getLiquibaseCatalogName(), database.getDatabaseChangeLogLockTableName()
+            database.getLiquibaseCatalogName(), tableName
         );
     }
 
@@ -63,10 +83,10 @@ public class CreateDatabaseChangeLogLockTableTemplate extends LiquibaseSqlTempla
                 + ") "
                 + "ENGINE KeeperMap('%s/%s', 1) PRIMARY KEY (ID)",
             database.getLiquibaseCatalogName(),
-            database.getDatabaseChangeLogLockTableName(),
+            tableName,
             clusterConfig.accept(onClusterTemplate),
             clusterConfig.tableZooKeeperPathPrefix(),
-            database.getDatabaseChangeLogLockTableName()
+            tableName
         );
     }
 }
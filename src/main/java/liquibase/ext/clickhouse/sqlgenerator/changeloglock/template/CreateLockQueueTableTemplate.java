@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changeloglock.template;
+
+import liquibase.database.Database;
+import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.StandaloneConfig;
+import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.OnClusterTemplate;
+
+/**
+ * Creates the table holding the tickets of the processes waiting for the changelog lock.
+ */
+public class CreateLockQueueTableTemplate extends LiquibaseSqlTemplate<String> {
+
+    public static final String SUFFIX = "_QUEUE";
+
+    private final Database database;
+    private final OnClusterTemplate onClusterTemplate;
+
+    public CreateLockQueueTableTemplate(Database database) {
+        this.database = database;
+        this.onClusterTemplate = new OnClusterTemplate();
+    }
+
+    @Override
+    public String visit(StandaloneConfig standaloneConfig) {
+        // a waiter leaves the queue by overwriting its ticket, the latest row of a waiter wins
+        return String.format(
+            "CREATE TABLE IF NOT EXISTS `%s`.%s%s "
+                + "("
+                + "WAITER String,"
+                + "TICKET UInt64,"
+                + "EXPIRES DateTime64(3)"
+                + ") "
+                + "ENGINE ReplacingMergeTree ORDER BY (WAITER) "
+                + "TTL toDateTime(EXPIRES) + INTERVAL 1 DAY",
+            database.getLiquibaseCatalogName(), database.getDatabaseChangeLogLockTableName(), SUFFIX
+        );
+    }
+
+    @Override
+    public String visit(ClusterConfig clusterConfig) {
+        return String.format(
+            "CREATE TABLE IF NOT EXISTS `%s`.%s%s %s"
+                + "("
+                + "WAITER String,"
+                + "TICKET UInt64,"
+                + "EXPIRES DateTime64(3)"
+                + ") "
+                + "ENGINE KeeperMap('%s/%s%s') PRIMARY KEY (WAITER)",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogLockTableName(),
+            SUFFIX,
+            clusterConfig.accept(onClusterTemplate),
+            clusterConfig.tableZooKeeperPathPrefix(),
+            database.getDatabaseChangeLogLockTableName(),
+            SUFFIX
+        );
+    }
+}
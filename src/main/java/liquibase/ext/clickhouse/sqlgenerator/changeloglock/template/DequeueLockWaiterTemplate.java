@@ -0,0 +1,63 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changeloglock.template;
+
+import liquibase.database.Database;
+import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.StandaloneConfig;
+import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
+
+/**
+ * Removes a ticket from the lock queue.
+ */
+public class DequeueLockWaiterTemplate extends LiquibaseSqlTemplate<String> {
+
+    private final Database database;
+    private final String waiter;
+
+    public DequeueLockWaiterTemplate(Database database, String waiter) {
+        this.database = database;
+        this.waiter = waiter;
+    }
+
+    @Override
+    public String visit(ClusterConfig object) {
+        // deleting from KeeperMap is cheap, so the tickets of waiters which disappeared are dropped as well
+        return String.format(
+            "ALTER TABLE `%s`.%s%s DELETE WHERE WAITER = %s OR EXPIRES < now64()",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogLockTableName(),
+            CreateLockQueueTableTemplate.SUFFIX,
+            escape(database, waiter)
+        );
+    }
+
+    @Override
+    public String visit(StandaloneConfig object) {
+        // an expired ticket replaces the live one, old rows are dropped by the table TTL
+        return String.format(
+            "INSERT INTO `%s`.%s%s (WAITER, TICKET, EXPIRES) VALUES (%s, 0, now64())",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogLockTableName(),
+            CreateLockQueueTableTemplate.SUFFIX,
+            escape(database, waiter)
+        );
+    }
+}
@@ -0,0 +1,57 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changeloglock.template;
+
+import liquibase.database.Database;
+import liquibase.ext.clickhouse.params.LiquibaseClickHouseConfig;
+import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
+
+/**
+ * Adds a ticket to the lock queue, or renews it. Tickets are ordered by the server time they were taken at, and a
+ * ticket is ignored once it has not been renewed for the given number of seconds.
+ */
+public class EnqueueLockWaiterTemplate extends LiquibaseSqlTemplate<String> {
+
+    private final Database database;
+    private final String waiter;
+    private final long ticket;
+    private final long ticketSeconds;
+
+    public EnqueueLockWaiterTemplate(Database database, String waiter, long ticket, long ticketSeconds) {
+        this.database = database;
+        this.waiter = waiter;
+        this.ticket = ticket;
+        this.ticketSeconds = ticketSeconds;
+    }
+
+    @Override
+    public String visitDefault(LiquibaseClickHouseConfig config) {
+        // the ticket of the waiter is overwritten, KeeperMap is not in strict mode here
+        return String.format(
+            "INSERT INTO `%s`.%s%s (WAITER, TICKET, EXPIRES) VALUES (%s, %d, now64() + INTERVAL %d SECOND)",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogLockTableName(),
+            CreateLockQueueTableTemplate.SUFFIX,
+            escape(database, waiter),
+            ticket,
+            ticketSeconds
+        );
+    }
+}
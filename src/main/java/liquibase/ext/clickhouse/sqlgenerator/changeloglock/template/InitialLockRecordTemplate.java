@@ -20,7 +20,7 @@
 package liquibase.ext.clickhouse.sqlgenerator.changeloglock.template;
 
 import liquibase.database.Database;
-import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.ParamsLoader;
 import liquibase.ext.clickhouse.params.StandaloneConfig;
 import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
 
@@ -34,17 +34,15 @@ public class InitialLockRecordTemplate extends LiquibaseSqlTemplate<String> {
 
     @Override
     public String visit(StandaloneConfig config) {
+        if (ParamsLoader.getExtensionOptions().keyValueLockTable()) {
+            return String.format(
+                "INSERT INTO `%s`.%s (ID, LOCKED) VALUES (1, 0)",
+                database.getLiquibaseCatalogName(), database.getDatabaseChangeLogLockTableName()
+            );
+        }
         return String.format(
             "INSERT INTO `%s`.%s (ID, LOCKED, SIGN) VALUES (1, 0, 1)",
             database.getLiquibaseCatalogName(), database.getDatabaseChangeLogLockTableName()
         );
     }
-
-    @Override
-    public String visit(ClusterConfig config) {
-        return String.format(
-            "INSERT INTO `%s`.%s (ID, LOCKED) VALUES (1, 0)",
-            database.getLiquibaseCatalogName(), database.getDatabaseChangeLogLockTableName()
-        );
-    }
 }
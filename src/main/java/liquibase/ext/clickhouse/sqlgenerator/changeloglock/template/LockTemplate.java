@@ -20,8 +20,8 @@
 package liquibase.ext.clickhouse.sqlgenerator.changeloglock.template;
 
 import liquibase.database.Database;
-import liquibase.ext.clickhouse.database.ClickHouseDatabase;
 import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.ParamsLoader;
 import liquibase.ext.clickhouse.params.StandaloneConfig;
 import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
 
@@ -29,32 +29,46 @@ public class LockTemplate extends LiquibaseSqlTemplate<String> {
 
     private final Database database;
     private final String lockingAgent;
+    private final String lockGranted;
 
-    public LockTemplate(Database database, String lockingAgent) {
+    public LockTemplate(Database database, String lockingAgent, String lockGranted) {
         this.database = database;
         this.lockingAgent = lockingAgent;
+        this.lockGranted = lockGranted;
     }
 
     @Override
     public String visit(ClusterConfig object) {
+        // in strict mode the insert fails if the key exists, so only one of the concurrent inserts succeeds
         return String.format(
-            "INSERT INTO `%s`.%s (ID, LOCKED, LOCKEDBY, LOCKGRANTED) " + "VALUES (1, 1, '%s', %s)",
+            "INSERT INTO `%s`.%s (ID, LOCKED, LOCKEDBY, LOCKGRANTED) "
+                + "SETTINGS keeper_map_strict_mode = 1 VALUES (1, 1, '%s', %s)",
             database.getLiquibaseCatalogName(),
             database.getDatabaseChangeLogLockTableName(),
             lockingAgent,
-            ClickHouseDatabase.CURRENT_DATE_TIME_FUNCTION
+            lockGranted
         );
     }
 
     @Override
     public String visit(StandaloneConfig object) {
+        if (ParamsLoader.getExtensionOptions().keyValueLockTable()) {
+            // the record is overwritten
+            return String.format(
+                "INSERT INTO `%s`.%s (ID, LOCKED, LOCKEDBY, LOCKGRANTED) VALUES (1, 1, '%s', %s)",
+                database.getLiquibaseCatalogName(),
+                database.getDatabaseChangeLogLockTableName(),
+                lockingAgent,
+                lockGranted
+            );
+        }
         return String.format(
             "INSERT INTO `%s`.%s (ID, LOCKED, LOCKEDBY, LOCKGRANTED, SIGN) "
                 + "VALUES (1, 1, '%s', %s, 1)",
             database.getLiquibaseCatalogName(),
             database.getDatabaseChangeLogLockTableName(),
             lockingAgent,
-            ClickHouseDatabase.CURRENT_DATE_TIME_FUNCTION
+            lockGranted
         );
     }
 }
@@ -0,0 +1,61 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changeloglock.template;
+
+import liquibase.database.Database;
+import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.StandaloneConfig;
+import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
+
+import java.util.List;
+
+/**
+ * Moves a standalone lock table to the EmbeddedRocksDB engine. The new table starts unlocked and takes the place
+ * of the old one, which must be locked by the caller for the duration of the migration.
+ */
+public class MigrateDatabaseChangeLogLockTableTemplate extends LiquibaseSqlTemplate<List<String>> {
+
+    private final Database database;
+
+    public MigrateDatabaseChangeLogLockTableTemplate(Database database) {
+        this.database = database;
+    }
+
+    @Override
+    public List<String> visit(StandaloneConfig standaloneConfig) {
+        String catalog = database.getLiquibaseCatalogName();
+        String table = database.getDatabaseChangeLogLockTableName();
+        String newTable = table + "_MIGRATION";
+        return List.of(
+            // leftovers of an interrupted migration
+            String.format("DROP TABLE IF EXISTS `%s`.%s", catalog, newTable),
+            new CreateDatabaseChangeLogLockTableTemplate(database, newTable).visit(standaloneConfig),
+            String.format("INSERT INTO `%s`.%s (ID, LOCKED) VALUES (1, 0)", catalog, newTable),
+            String.format("EXCHANGE TABLES `%s`.%s AND `%s`.%s", catalog, table, catalog, newTable),
+            String.format("DROP TABLE `%s`.%s", catalog, newTable)
+        );
+    }
+
+    @Override
+    public List<String> visit(ClusterConfig clusterConfig) {
+        // the cluster lock table always uses KeeperMap
+        return List.of();
+    }
+}
@@ -0,0 +1,84 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changeloglock.template;
+
+import liquibase.database.Database;
+import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.ext.clickhouse.params.StandaloneConfig;
+import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
+
+/**
+ * Releases the lock record of the given holder if its lease has not been renewed in time. The condition is
+ * evaluated by the releasing query itself, so a lock that was renewed or taken over in the meantime is left alone.
+ */
+public class ReleaseExpiredLockTemplate extends LiquibaseSqlTemplate<String> {
+
+    private final Database database;
+    private final int leaseSeconds;
+    private final String lockingAgent;
+
+    public ReleaseExpiredLockTemplate(Database database, int leaseSeconds, String lockingAgent) {
+        this.database = database;
+        this.leaseSeconds = leaseSeconds;
+        this.lockingAgent = lockingAgent;
+    }
+
+    @Override
+    public String visit(ClusterConfig object) {
+        return String.format(
+            "ALTER TABLE `%s`.%s DELETE "
+                + "WHERE ID = 1 AND LOCKED = 1 AND LOCKEDBY = %s AND LOCKGRANTED < now64() - INTERVAL %d SECOND "
+                + "SETTINGS keeper_map_strict_mode = 1",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogLockTableName(),
+            escape(database, lockingAgent),
+            leaseSeconds
+        );
+    }
+
+    @Override
+    public String visit(StandaloneConfig object) {
+        if (ParamsLoader.getExtensionOptions().keyValueLockTable()) {
+            // the record is overwritten with the unlocked state
+            return String.format(
+                "INSERT INTO `%1$s`.%2$s (ID, LOCKED, LOCKEDBY, LOCKGRANTED) "
+                    + "SELECT ID, 0, null, null FROM `%1$s`.%2$s "
+                    + "WHERE ID = 1 AND LOCKED = 1 AND LOCKEDBY = %3$s "
+                    + "AND LOCKGRANTED < now64() - INTERVAL %4$d SECOND",
+                database.getLiquibaseCatalogName(),
+                database.getDatabaseChangeLogLockTableName(),
+                escape(database, lockingAgent),
+                leaseSeconds
+            );
+        }
+        // the record is cancelled
+        return String.format(
+            "INSERT INTO `%1$s`.%2$s (ID, LOCKED, LOCKEDBY, LOCKGRANTED, SIGN) "
+                + "SELECT ID, LOCKED, LOCKEDBY, LOCKGRANTED, -1 FROM `%1$s`.%2$s FINAL "
+                + "WHERE ID = 1 AND LOCKED = 1 AND SIGN = 1 AND LOCKEDBY = %3$s "
+                + "AND LOCKGRANTED < now64() - INTERVAL %4$d SECOND",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogLockTableName(),
+            escape(database, lockingAgent),
+            leaseSeconds
+        );
+    }
+}
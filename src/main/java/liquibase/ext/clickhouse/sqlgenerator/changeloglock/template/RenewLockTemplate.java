@@ -0,0 +1,76 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changeloglock.template;
+
+import liquibase.database.Database;
+import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.ext.clickhouse.params.StandaloneConfig;
+import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
+
+/**
+ * Extends the lease of the changelog lock held by the given agent. The renewal is visible as soon as the query
+ * returns: KeeperMap runs the mutation synchronously, the standalone tables get the renewed record inserted.
+ */
+public class RenewLockTemplate extends LiquibaseSqlTemplate<String> {
+
+    private final Database database;
+    private final String lockingAgent;
+
+    public RenewLockTemplate(Database database, String lockingAgent) {
+        this.database = database;
+        this.lockingAgent = lockingAgent;
+    }
+
+    @Override
+    public String visit(ClusterConfig object) {
+        return String.format(
+            "ALTER TABLE `%s`.%s UPDATE LOCKGRANTED = now64() WHERE ID = 1 AND LOCKED = 1 AND LOCKEDBY = %s",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogLockTableName(),
+            escape(database, lockingAgent)
+        );
+    }
+
+    @Override
+    public String visit(StandaloneConfig object) {
+        if (ParamsLoader.getExtensionOptions().keyValueLockTable()) {
+            // the record is overwritten
+            return String.format(
+                "INSERT INTO `%1$s`.%2$s (ID, LOCKED, LOCKEDBY, LOCKGRANTED) "
+                    + "SELECT ID, LOCKED, LOCKEDBY, now64() FROM `%1$s`.%2$s "
+                    + "WHERE ID = 1 AND LOCKED = 1 AND LOCKEDBY = %3$s",
+                database.getLiquibaseCatalogName(),
+                database.getDatabaseChangeLogLockTableName(),
+                escape(database, lockingAgent)
+            );
+        }
+        // the current record is cancelled and inserted again with the new lease
+        return String.format(
+            "INSERT INTO `%1$s`.%2$s (ID, LOCKED, LOCKEDBY, LOCKGRANTED, SIGN) "
+                + "SELECT ID, LOCKED, LOCKEDBY, if(NEW_SIGN = 1, now64(), LOCKGRANTED), NEW_SIGN "
+                + "FROM `%1$s`.%2$s FINAL ARRAY JOIN [-1, 1] AS NEW_SIGN "
+                + "WHERE ID = 1 AND LOCKED = 1 AND SIGN = 1 AND LOCKEDBY = %3$s",
+            database.getLiquibaseCatalogName(),
+            database.getDatabaseChangeLogLockTableName(),
+            escape(database, lockingAgent)
+        );
+    }
+}
@@ -0,0 +1,65 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changeloglock.template;
+
+import liquibase.database.Database;
+import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.ParamsLoader;
+import liquibase.ext.clickhouse.params.StandaloneConfig;
+import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
+
+/**
+ * Selects the holder of a changelog lock whose lease has not been renewed in time.
+ */
+public class SelectExpiredLockTemplate extends LiquibaseSqlTemplate<String> {
+
+    private final Database database;
+    private final int leaseSeconds;
+
+    public SelectExpiredLockTemplate(Database database, int leaseSeconds) {
+        this.database = database;
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    @Override
+    public String visit(ClusterConfig object) {
+        return selectRecord();
+    }
+
+    @Override
+    public String visit(StandaloneConfig object) {
+        if (ParamsLoader.getExtensionOptions().keyValueLockTable()) {
+            return selectRecord();
+        }
+        return String.format(
+            "SELECT LOCKEDBY FROM `%s`.%s FINAL "
+                + "WHERE ID = 1 AND LOCKED = 1 AND SIGN = 1 AND LOCKGRANTED < now64() - INTERVAL %d SECOND",
+            database.getLiquibaseCatalogName(), database.getDatabaseChangeLogLockTableName(), leaseSeconds
+        );
+    }
+
+    private String selectRecord() {
+        return String.format(
+            "SELECT LOCKEDBY FROM `%s`.%s "
+                + "WHERE ID = 1 AND LOCKED = 1 AND LOCKGRANTED < now64() - INTERVAL %d SECOND",
+            database.getLiquibaseCatalogName(), database.getDatabaseChangeLogLockTableName(), leaseSeconds
+        );
+    }
+}
@@ -22,6 +22,7 @@ package liquibase.ext.clickhouse.sqlgenerator.changeloglock.template;
 import liquibase.change.ColumnConfig;
 import liquibase.database.Database;
 import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.ParamsLoader;
 import liquibase.ext.clickhouse.params.StandaloneConfig;
 import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
 import liquibase.statement.core.SelectFromDatabaseChangeLogLockStatement;
@@ -43,6 +44,18 @@ public class SelectLockTemplate extends LiquibaseSqlTemplate<String> {
 
     @Override
     public String visit(ClusterConfig object) {
+        return selectRecord();
+    }
+
+    @Override
+    public String visit(StandaloneConfig object) {
+        if (ParamsLoader.getExtensionOptions().keyValueLockTable()) {
+            return selectRecord();
+        }
+        return selectCollapsedRecord();
+    }
+
+    private String selectRecord() {
         String selector =
             Arrays.stream(statement.getColumnsToSelect())
                 .map(ColumnConfig::getName)
@@ -53,16 +66,15 @@ public class SelectLockTemplate extends LiquibaseSqlTemplate<String> {
         );
     }
 
-    @Override
-    public String visit(StandaloneConfig object) {
+    private String selectCollapsedRecord() {
         String selector =
             Arrays.stream(statement.getColumnsToSelect())
                 .map(ColumnConfig::getName)
                 .map(it -> it.equals("LOCKED") ? "max(LOCKED)" : it)
                 .collect(Collectors.joining(", "));
-        String groupBy = getGroupBy(selector);
+        // a cancel row is left over when two waiters released the same expired lock, it reads as unlocked
         return String.format(
-            "SELECT %s FROM %s.%s FINAL WHERE ID = 1 %s;",
+            "SELECT %s FROM %s.%s FINAL WHERE ID = 1 AND SIGN = 1 %s;",
             selector,
             database.getLiquibaseCatalogName(),
             database.getDatabaseChangeLogLockTableName(),
@@ -21,31 +21,53 @@ package liquibase.ext.clickhouse.sqlgenerator.changeloglock.template;
 
 import liquibase.database.Database;
 import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.ParamsLoader;
 import liquibase.ext.clickhouse.params.StandaloneConfig;
 import liquibase.ext.clickhouse.sqlgenerator.LiquibaseSqlTemplate;
 
+/**
+ * Releases the changelog lock held by the given agent, leaving a lock taken over by another process alone, or
+ * whoever holds it if no agent is given.
+ */
 public class UnlockTemplate extends LiquibaseSqlTemplate<String> {
 
     private final Database database;
+    private final String lockingAgent;
 
-    public UnlockTemplate(Database database) {
+    public UnlockTemplate(Database database, String lockingAgent) {
         this.database = database;
+        this.lockingAgent = lockingAgent;
     }
 
     @Override
     public String visit(ClusterConfig object) {
+        // the record exists only while the lock is held
         return String.format(
-            "INSERT INTO %s.%s (ID, LOCKED, LOCKEDBY, LOCKGRANTED)" + "VALUES (1, 0, null, null)",
-            database.getLiquibaseCatalogName(), database.getDatabaseChangeLogLockTableName()
+            "ALTER TABLE `%s`.%s DELETE WHERE ID = 1%s",
+            database.getLiquibaseCatalogName(), database.getDatabaseChangeLogLockTableName(), holderCondition()
         );
     }
 
     @Override
     public String visit(StandaloneConfig object) {
+        if (ParamsLoader.getExtensionOptions().keyValueLockTable()) {
+            // the record is overwritten with the unlocked state
+            return String.format(
+                "INSERT INTO `%1$s`.%2$s (ID, LOCKED, LOCKEDBY, LOCKGRANTED) "
+                    + "SELECT ID, 0, null, null FROM `%1$s`.%2$s WHERE ID = 1%3$s",
+                database.getLiquibaseCatalogName(), database.getDatabaseChangeLogLockTableName(), holderCondition()
+            );
+        }
+        // the record is cancelled
         return String.format(
-            "INSERT INTO `%s`.%s (ID, LOCKED, LOCKEDBY, LOCKGRANTED, SIGN) "
-                + "VALUES (1, 1, null, null, -1)",
-            database.getLiquibaseCatalogName(), database.getDatabaseChangeLogLockTableName()
+            "INSERT INTO `%1$s`.%2$s (ID, LOCKED, LOCKEDBY, LOCKGRANTED, SIGN) "
+                + "SELECT ID, LOCKED, LOCKEDBY, LOCKGRANTED, -1 FROM `%1$s`.%2$s FINAL "
+                + "WHERE ID = 1 AND SIGN = 1%3$s",
+            database.getLiquibaseCatalogName(), database.getDatabaseChangeLogLockTableName(), holderCondition()
         );
     }
+
+    private String holderCondition() {
+        return lockingAgent == null ? "" : " AND LOCKEDBY = " + escape(database, lockingAgent);
+    }
 }
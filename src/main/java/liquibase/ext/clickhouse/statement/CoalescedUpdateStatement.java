@@ -0,0 +1,42 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.statement;
+
+import liquibase.statement.AbstractSqlStatement;
+import liquibase.statement.core.UpdateStatement;
+
+import java.util.List;
+
+/**
+ * Consecutive updates of one table, run as the commands of a single {@code ALTER TABLE} so that every part is
+ * rewritten once.
+ */
+public class CoalescedUpdateStatement extends AbstractSqlStatement {
+
+    private final List<UpdateStatement> updates;
+
+    public CoalescedUpdateStatement(List<UpdateStatement> updates) {
+        this.updates = List.copyOf(updates);
+    }
+
+    public List<UpdateStatement> getUpdates() {
+        return updates;
+    }
+}
@@ -0,0 +1,84 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.statement;
+
+import liquibase.resource.Resource;
+import liquibase.statement.AbstractSqlStatement;
+
+import java.util.List;
+
+/**
+ * Insert of the unparsed content of a file in a ClickHouse input format, streamed by the executor through the
+ * client of the JDBC driver.
+ */
+public class InsertFileStatement extends AbstractSqlStatement {
+
+    private final String catalogName;
+    private final String tableName;
+    private final Resource resource;
+    private final String format;
+    private final List<String> columns;
+    private final String compression;
+    private final boolean compressRequest;
+
+    public InsertFileStatement(
+        String catalogName, String tableName, Resource resource, String format, List<String> columns,
+        String compression, boolean compressRequest
+    ) {
+        this.catalogName = catalogName;
+        this.tableName = tableName;
+        this.resource = resource;
+        this.format = format;
+        this.columns = List.copyOf(columns);
+        this.compression = compression;
+        this.compressRequest = compressRequest;
+    }
+
+    public String getCatalogName() {
+        return catalogName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public Resource getResource() {
+        return resource;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the encoding the file is stored with, or {@code null} if it is not compressed.
+     */
+    public String getCompression() {
+        return compression;
+    }
+
+    public boolean isCompressRequest() {
+        return compressRequest;
+    }
+}
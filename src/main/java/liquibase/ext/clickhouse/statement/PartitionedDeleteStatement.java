@@ -0,0 +1,47 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.statement;
+
+import liquibase.statement.core.DeleteStatement;
+
+/**
+ * Delete limited to one partition of the table with an {@code IN PARTITION} clause.
+ */
+public class PartitionedDeleteStatement extends DeleteStatement {
+
+    /**
+     * Changeset attribute holding the partition expression of its deletes, e.g. {@code ch:partition="202401"}.
+     */
+    public static final String PARTITION = "partition";
+
+    private final String partition;
+
+    public PartitionedDeleteStatement(DeleteStatement delete, String partition) {
+        super(delete.getCatalogName(), delete.getSchemaName(), delete.getTableName());
+        setWhere(delete.getWhere());
+        addWhereParameters(delete.getWhereParameters().toArray());
+        delete.getWhereColumnNames().forEach(this::addWhereColumnName);
+        this.partition = partition;
+    }
+
+    public String getPartition() {
+        return partition;
+    }
+}
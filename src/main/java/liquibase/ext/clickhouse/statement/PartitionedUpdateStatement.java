@@ -0,0 +1,44 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.statement;
+
+import liquibase.statement.core.UpdateStatement;
+
+/**
+ * Update limited to one partition of the table, always run as an {@code ALTER TABLE ... UPDATE} mutation with an
+ * {@code IN PARTITION ID} clause.
+ */
+public class PartitionedUpdateStatement extends UpdateStatement {
+
+    private final String partitionId;
+
+    public PartitionedUpdateStatement(UpdateStatement update, String partitionId) {
+        super(update.getCatalogName(), update.getSchemaName(), update.getTableName());
+        update.getNewColumnValues().forEach(this::addNewColumnValue);
+        setWhereClause(update.getWhereClause());
+        update.getWhereColumnNames().forEach(this::addWhereColumnName);
+        update.getWhereParameters().forEach(this::addWhereParameter);
+        this.partitionId = partitionId;
+    }
+
+    public String getPartitionId() {
+        return partitionId;
+    }
+}
@@ -20,15 +20,30 @@
  */
 package liquibase;
 
+import com.typesafe.config.ConfigFactory;
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
 import liquibase.changelog.ChangeSet;
 import liquibase.database.Database;
 import liquibase.database.DatabaseFactory;
 import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LockException;
+import liquibase.executor.ExecutorService;
+import liquibase.ext.clickhouse.changelog.ChangeLogFastCheck;
+import liquibase.ext.clickhouse.changelog.ChangeLogFingerprint;
+import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+import liquibase.ext.clickhouse.params.ExtensionOptions;
 import liquibase.ext.clickhouse.params.LiquibaseClickHouseConfig;
 import liquibase.ext.clickhouse.params.ParamsLoader;
 import liquibase.ext.clickhouse.sqlgenerator.changelog.ChangelogColumns;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.LockDatabaseChangeLogClickHouse;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.template.LockTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.template.SelectLockHolderTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.template.UnlockTemplate;
+import liquibase.lockservice.DatabaseChangeLogLock;
+import liquibase.lockservice.LockServiceFactory;
 import liquibase.resource.ClassLoaderResourceAccessor;
 import liquibase.resource.ResourceAccessor;
+import liquibase.statement.core.RawSqlStatement;
 import org.intellij.lang.annotations.Language;
 import org.junit.jupiter.api.Test;
 import org.testcontainers.shaded.org.apache.commons.io.output.NullWriter;
@@ -41,9 +56,12 @@ import java.util.Date;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 abstract class BaseClickHouseTestCase {
@@ -136,6 +154,37 @@ abstract class BaseClickHouseTestCase {
         );
     }
 
+    @Test
+    void canExecuteChangelogWithBatchedChangeLogWrites() throws Exception {
+        withOptions(Map.of("changelog.markRanBatchSize", 2), () -> {
+            runLiquibase(
+                "batched-changelog.xml",
+                (liquibase, connection) -> {
+                    String started = queryString(connection, "SELECT toString(now64(6))");
+                    liquibase.update();
+                    liquibase.update(); // already applied changesets must have been recorded
+                    try (Statement stmt = connection.createStatement()) {
+                        stmt.execute("SYSTEM FLUSH LOGS");
+                    }
+                    // the first two rows are written by one INSERT, the third one when the lock is released
+                    @Language("ClickHouse")
+                    String inserts = "SELECT groupArray(written_rows) FROM (SELECT written_rows "
+                                         + "FROM system.query_log WHERE type = 'QueryFinish' AND query_kind = 'Insert' "
+                                         + "AND is_initial_query AND arrayExists(t -> endsWith(t, '.DATABASECHANGELOG'), tables) "
+                                         + "AND event_time_microseconds >= toDateTime64(?, 6) "
+                                         + "ORDER BY event_time_microseconds)";
+                    try (var pstmt = connection.prepareStatement(inserts)) {
+                        pstmt.setString(1, started);
+                        try (var rs = pstmt.executeQuery()) {
+                            assertTrue(rs.next());
+                            assertEquals("[2,1]", rs.getString(1));
+                        }
+                    }
+                }
+            );
+        });
+    }
+
     @Test
     void canExecuteRunAlwaysChangeSetTwice() {
         runLiquibase(
@@ -177,6 +226,183 @@ abstract class BaseClickHouseTestCase {
         );
     }
 
+    @Test
+    void canIndexRanChangeSets() {
+        runLiquibase(
+            getChangelogFileName(), (liquibase, connection) -> {
+                liquibase.update();
+                var service = Scope.getCurrentScope().getSingleton(ChangeLogHistoryServiceFactory.class)
+                                  .getChangeLogService(liquibase.getDatabase());
+                service.reset();
+                int maxOrderExecuted = 0;
+                for (ChangeSet changeSet : liquibase.getDatabaseChangeLog().getChangeSets()) {
+                    var ranChangeSet = service.getRanChangeSet(changeSet);
+                    assertEquals(changeSet.getId(), ranChangeSet.getId());
+                    maxOrderExecuted = Math.max(maxOrderExecuted, ranChangeSet.getOrderExecuted());
+                }
+                assertEquals(maxOrderExecuted + 1, service.getNextSequenceValue());
+            }
+        );
+    }
+
+    @Test
+    void canProbeLiquibaseTables() {
+        runLiquibase(
+            getChangelogFileName(), (liquibase, connection) -> {
+                liquibase.update();
+                var database = (ClickHouseDatabase) liquibase.getDatabase();
+                database.resetLiquibaseTables();
+                var executor = Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", database);
+                var tables = database.getLiquibaseTables(executor);
+                assertTrue(tables.changeLogTable().isPresent());
+                assertTrue(tables.changeLogLockTable().isPresent());
+                // the cached state is reused until it is reset
+                assertSame(tables, database.getLiquibaseTables(executor));
+            }
+        );
+    }
+
+    @Test
+    void canStoreChangeLogFingerprint() throws Exception {
+        withOptions(Map.of("changelog.fingerprint", true), () -> {
+            runLiquibase(
+                getChangelogFileName(), (liquibase, connection) -> {
+                    var database = liquibase.getDatabase();
+                    var changeLog = liquibase.getDatabaseChangeLog();
+                    assertFalse(ChangeLogFastCheck.isUpToDate(database, changeLog));
+                    liquibase.update();
+                    var ranChangeSets = Scope.getCurrentScope().getSingleton(ChangeLogHistoryServiceFactory.class)
+                                            .getChangeLogService(database).getRanChangeSets();
+                    try (Statement stmt = connection.createStatement()) {
+                        stmt.execute("SELECT FINGERPRINT FROM DATABASECHANGELOG_FINGERPRINT ORDER BY UPDATED DESC");
+                        try (var rs = stmt.getResultSet()) {
+                            assertTrue(rs.next());
+                            assertEquals(ChangeLogFingerprint.of(ranChangeSets), rs.getString(1));
+                        }
+                    }
+                    // the changelog has a runAlways changeset, so it is never up to date
+                    assertFalse(ChangeLogFastCheck.isUpToDate(database, changeLog));
+                }
+            );
+            // a history of its own, holding nothing but the changesets of the fixture
+            runLiquibase(
+                "fingerprint-changelog.xml", (liquibase, connection) -> {
+                    var database = useFingerprintTables(liquibase.getDatabase());
+                    liquibase.update();
+                    assertTrue(ChangeLogFastCheck.isUpToDate(database, liquibase.getDatabaseChangeLog()));
+                }
+            );
+            runLiquibase(
+                "fingerprint-changed-changelog.xml", (liquibase, connection) -> {
+                    var database = useFingerprintTables(liquibase.getDatabase());
+                    assertFalse(ChangeLogFastCheck.isUpToDate(database, liquibase.getDatabaseChangeLog()));
+                }
+            );
+            runLiquibase(
+                "fingerprint-added-changelog.xml", (liquibase, connection) -> {
+                    var database = useFingerprintTables(liquibase.getDatabase());
+                    assertFalse(ChangeLogFastCheck.isUpToDate(database, liquibase.getDatabaseChangeLog()));
+                }
+            );
+        });
+    }
+
+    @Test
+    void canTakeOverExpiredLock() throws Exception {
+        withOptions(Map.of("lock.leaseSeconds", 1), () -> {
+            runLiquibase(
+                getChangelogFileName(), (liquibase, connection) -> {
+                    var lockService = LockServiceFactory.getInstance().getLockService(liquibase.getDatabase());
+                    assertTrue(lockService.acquireLock());
+                    Date expiredGrant = lockService.listLocks()[0].getLockGranted();
+                    // the holder disappears without releasing the lock, so its lease is not renewed anymore
+                    LockServiceFactory.getInstance().resetAll();
+                    Thread.sleep(2000);
+                    var newLockService = LockServiceFactory.getInstance().getLockService(liquibase.getDatabase());
+                    assertTrue(newLockService.acquireLock());
+                    try {
+                        DatabaseChangeLogLock[] locks = newLockService.listLocks();
+                        assertEquals(1, locks.length);
+                        assertEquals(LockDatabaseChangeLogClickHouse.getLockedBy(), locks[0].getLockedBy());
+                        assertTrue(locks[0].getLockGranted().after(expiredGrant));
+                        // the lease of the new holder is renewed while it runs
+                        Thread.sleep(2000);
+                        assertTrue(newLockService.listLocks()[0].getLockGranted().after(locks[0].getLockGranted()));
+                    } finally {
+                        newLockService.releaseLock();
+                    }
+                    liquibase.update();
+                }
+            );
+        });
+    }
+
+    @Test
+    void canNotReleaseTakenOverLock() throws Exception {
+        withOptions(Map.of("lock.leaseSeconds", 1), () -> {
+            runLiquibase(
+                getChangelogFileName(), (liquibase, connection) -> {
+                    Database database = liquibase.getDatabase();
+                    var lockService = LockServiceFactory.getInstance().getLockService(database);
+                    assertTrue(lockService.acquireLock());
+                    var config = ParamsLoader.getLiquibaseClickhouseProperties();
+                    try (Statement stmt = connection.createStatement()) {
+                        // another process takes the lock over, as if the lease of this one had run out
+                        stmt.execute(config.accept(new UnlockTemplate(database, null)));
+                        stmt.execute(config.accept(new LockTemplate(database, "other-process", "now64()")));
+                    }
+                    try {
+                        // the heartbeat finds the lock taken over on its next renewal
+                        Thread.sleep(2000);
+                        var executor = Scope.getCurrentScope().getSingleton(ExecutorService.class)
+                                           .getExecutor("jdbc", database);
+                        Exception error = assertThrows(Exception.class,
+                            () -> executor.execute(new RawSqlStatement("SELECT 1")));
+                        assertTrue(hasCauseMessage(error, "changelog lock was lost"), "the lost lock must be reported");
+                        LockException releaseError = assertThrows(LockException.class, lockService::releaseLock);
+                        assertTrue(releaseError.getMessage().contains("taken over by other-process"));
+                        // the lock of the new holder is left alone
+                        assertEquals("other-process",
+                            queryString(connection, config.accept(new SelectLockHolderTemplate(database))));
+                    } finally {
+                        lockService.forceReleaseLock();
+                    }
+                    liquibase.update();
+                }
+            );
+        });
+    }
+
+    @Test
+    void canRecordRunAlwaysChangeSetWithoutMutations() throws Exception {
+        withOptions(Map.of("changelog.appendOnlyReruns", true), () -> {
+            runLiquibase(
+                getChangelogFileName(), (liquibase, connection) -> {
+                    liquibase.update();
+                    liquibase.update();
+                    String runAlwaysChangeSetId = getRunAlwaysChangeSetId();
+
+                    @Language("ClickHouse")
+                    String sql = "SELECT EXECTYPE FROM DATABASECHANGELOG WHERE ID = ? "
+                                     + "ORDER BY DATEEXECUTED DESC, ORDEREXECUTED DESC LIMIT 1";
+                    try (var pstmt = connection.prepareStatement(sql)) {
+                        pstmt.setString(1, runAlwaysChangeSetId);
+                        try (var rs = pstmt.executeQuery()) {
+                            assertTrue(rs.next());
+                            assertEquals(ChangeSet.ExecType.RERAN.name(), rs.getString(1));
+                        }
+                    }
+                    // the history holds a single entry per changeset, whatever the number of rows
+                    var ranChangeSets = Scope.getCurrentScope().getSingleton(ChangeLogHistoryServiceFactory.class)
+                                            .getChangeLogService(liquibase.getDatabase()).getRanChangeSets();
+                    assertEquals(1, ranChangeSets.stream()
+                                        .filter(ranChangeSet -> ranChangeSet.getId().equals(runAlwaysChangeSetId))
+                                        .count());
+                }
+            );
+        });
+    }
+
     private static Map<ChangelogColumns, Object> getChangeLogRow(String id, Connection connection)
         throws SQLException {
         @Language("ClickHouse")
@@ -197,6 +423,31 @@ abstract class BaseClickHouseTestCase {
         }
     }
 
+    private static Database useFingerprintTables(Database database) {
+        database.setDatabaseChangeLogTableName("FINGERPRINT_CHANGELOG");
+        database.setDatabaseChangeLogLockTableName("FINGERPRINT_CHANGELOGLOCK");
+        return database;
+    }
+
+    static String queryString(Connection connection, @Language("ClickHouse") String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement(); var rs = stmt.executeQuery(sql)) {
+            assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+
+    /**
+     * Returns whether the error, or one of its causes, has a message containing the given text.
+     */
+    static boolean hasCauseMessage(Throwable error, String text) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (String.valueOf(cause.getMessage()).contains(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     protected abstract void doWithConnection(ThrowingConsumer<Connection> callback);
 
     protected abstract String getChangelogFileName();
@@ -205,11 +456,21 @@ abstract class BaseClickHouseTestCase {
 
     void runLiquibase(
         String changelog, ThrowingBiConsumer<Liquibase, Connection> liquibaseAction
+    ) {
+        runLiquibase(changelog, this::doWithConnection, liquibaseAction);
+    }
+
+    /**
+     * Runs the action on a connection given by the connector, e.g. one of another driver version.
+     */
+    void runLiquibase(
+        String changelog, Consumer<ThrowingConsumer<Connection>> connector,
+        ThrowingBiConsumer<Liquibase, Connection> liquibaseAction
     ) {
         DatabaseFactory dbFactory = DatabaseFactory.getInstance();
         try (ResourceAccessor resourceAccessor = new ClassLoaderResourceAccessor()) {
 
-        doWithConnection(
+        connector.accept(
             connection -> {
                 JdbcConnection jdbcConnection = new JdbcConnection(connection);
                 Database database = dbFactory.findCorrectDatabaseImplementation(jdbcConnection);
@@ -230,6 +491,26 @@ abstract class BaseClickHouseTestCase {
         f.set(null, config);
     }
 
+    /**
+     * Runs the action with the given extension options, the options of the configuration file are restored
+     * afterwards.
+     */
+    static void withOptions(Map<String, ?> options, ThrowingRunnable action) throws Exception {
+        setOptions(ExtensionOptions.of(ConfigFactory.parseMap(options)));
+        try {
+            action.run();
+        } finally {
+            setOptions(null);
+        }
+    }
+
+    static void setOptions(ExtensionOptions options)
+        throws NoSuchFieldException, IllegalAccessException {
+        var f = ParamsLoader.class.getDeclaredField("extensionOptions");
+        f.setAccessible(true);
+        f.set(null, options);
+    }
+
     @FunctionalInterface
     protected interface ThrowingBiConsumer<T1, T2> {
         void accept(T1 t1, T2 t2) throws Exception;
@@ -239,4 +520,9 @@ abstract class BaseClickHouseTestCase {
     protected interface ThrowingConsumer<T1> {
         void accept(T1 t1) throws Exception;
     }
+
+    @FunctionalInterface
+    protected interface ThrowingRunnable {
+        void run() throws Exception;
+    }
 }
@@ -20,7 +20,9 @@
 package liquibase;
 
 import com.clickhouse.jdbc.ClickHouseDriver;
+import liquibase.ext.clickhouse.lockservice.ClickHouseLockService;
 import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.lockservice.LockServiceFactory;
 import org.intellij.lang.annotations.Language;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -39,6 +41,9 @@ import java.util.Map;
 import java.util.Properties;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 public class ClickHouseClusterTest extends BaseClickHouseTestCase {
@@ -70,6 +75,62 @@ public class ClickHouseClusterTest extends BaseClickHouseTestCase {
     }
 
 
+    @Test
+    void canAcquireKeeperMapLockOnce() {
+        runLiquibase(
+            getChangelogFileName(),
+            (liquibase, connection) -> {
+                var lockService = LockServiceFactory.getInstance().getLockService(liquibase.getDatabase());
+                var contender = new ClickHouseLockService();
+                contender.setDatabase(liquibase.getDatabase());
+                assertTrue(lockService.acquireLock());
+                try {
+                    assertFalse(contender.acquireLock());
+                } finally {
+                    lockService.releaseLock();
+                }
+                // the lock record is deleted on release
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("select count(*) from DATABASECHANGELOGLOCK");
+                    try (var rs = stmt.getResultSet()) {
+                        rs.next();
+                        assertEquals(0, rs.getInt(1));
+                    }
+                }
+                assertTrue(contender.acquireLock());
+                contender.releaseLock();
+            }
+        );
+    }
+
+    @Test
+    void canSubmitDistributedDdlAsynchronously() throws Exception {
+        withOptions(Map.of("ddl.async", true, "ddl.pollMillis", 100, "ddl.timeoutSeconds", 60), () -> {
+            runLiquibase(
+                "async-ddl-changelog.xml",
+                (liquibase, connection) -> {
+                    // the ALTER of the missing table is queued, and fails on the hosts
+                    Exception error = assertThrows(Exception.class, liquibase::update);
+                    assertTrue(hasCauseMessage(error, "Distributed DDL failed"), "the failed DDL must be reported");
+                    assertEquals("async-ddl-create,async-ddl-data", queryString(connection,
+                        "SELECT arrayStringConcat(arraySort(groupArray(ID)), ',') FROM DATABASECHANGELOG "
+                            + "WHERE ID LIKE 'async-ddl-%'"));
+                    // the data statements waited for the column added before them
+                    assertEquals("1", queryString(connection, "SELECT count() FROM async_ddl WHERE a = 1"));
+                    try (Statement stmt = connection.createStatement()) {
+                        stmt.execute("SYSTEM FLUSH LOGS ON CLUSTER '{cluster}'");
+                    }
+                    // the CREATE returned without waiting for the hosts
+                    assertEquals("0", queryString(connection,
+                        "SELECT any(Settings['distributed_ddl_task_timeout']) "
+                            + "FROM clusterAllReplicas('default', system.query_log) "
+                            + "WHERE type = 'QueryFinish' AND is_initial_query "
+                            + "AND query_kind = 'Create' AND position(query, 'async_ddl ON CLUSTER') > 0"));
+                }
+            );
+        });
+    }
+
     @RepeatedTest(30)
     void canRunComplexMigrationsWithInsertions() {
         runLiquibase(
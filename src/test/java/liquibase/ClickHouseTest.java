@@ -21,14 +21,33 @@
 package liquibase;
 
 import com.clickhouse.jdbc.JdbcConfig;
+import liquibase.database.Database;
+import liquibase.ext.clickhouse.changelog.ParallelChangeLogUpdate;
+import liquibase.ext.clickhouse.params.ParamsLoader;
 import liquibase.ext.clickhouse.params.StandaloneConfig;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.LockDatabaseChangeLogClickHouse;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.template.LockTemplate;
+import liquibase.ext.clickhouse.sqlgenerator.changeloglock.template.SelectLockHolderTemplate;
+import liquibase.lockservice.LockServiceFactory;
+import org.intellij.lang.annotations.Language;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
 import org.testcontainers.clickhouse.ClickHouseContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
 import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 @SuppressWarnings("JUnitTestCaseWithNoTests")
@@ -41,13 +60,495 @@ public class ClickHouseTest extends BaseClickHouseTestCase {
         setConfig(new StandaloneConfig());
     }
 
+    private static final String CONNECTION_PARAMS =
+        "?clickhouse.jdbc.v1=true&" + JdbcConfig.PROP_EXTERNAL_DATABASE + "=false";
+    // the current driver, whose connection hands its client to the streaming inserts
+    private static final String V2_CONNECTION_PARAMS = "?" + JdbcConfig.PROP_EXTERNAL_DATABASE + "=false";
+
     @Container
     private static final ClickHouseContainer clickHouseContainer = new ClickHouseContainer(Images.CLICKHOUSE);
 
+    @Test
+    void canWaitForLockInQueue() throws Exception {
+        withOptions(Map.of("lock.backoffInitialMillis", 100, "lock.fairQueue", true), () -> {
+            runLiquibase(
+                getChangelogFileName(), (liquibase, connection) -> {
+                    liquibase.update();
+                    // the waiter leaves the queue once it holds the lock
+                    try (Statement stmt = connection.createStatement()) {
+                        stmt.execute(
+                            "SELECT count(*) FROM DATABASECHANGELOGLOCK_QUEUE FINAL WHERE EXPIRES > now64()");
+                        try (var rs = stmt.getResultSet()) {
+                            rs.next();
+                            assertEquals(0, rs.getInt(1));
+                        }
+                        // a waiter killed at the head of the queue, its ticket is not renewed anymore
+                        stmt.execute("INSERT INTO DATABASECHANGELOGLOCK_QUEUE (WAITER, TICKET, EXPIRES) "
+                                         + "VALUES ('killed', 1, now64() + INTERVAL 2 SECOND)");
+                    }
+                    long started = System.currentTimeMillis();
+                    liquibase.update();
+                    // the ticket is skipped once it expires, long before the lock wait time is over
+                    assertTrue(System.currentTimeMillis() - started < TimeUnit.SECONDS.toMillis(30));
+                }
+            );
+        });
+    }
+
+    @Test
+    void canAwaitMutations() throws Exception {
+        withOptions(Map.of("mutation.await", true, "mutation.pollMillis", 100), () -> {
+            runLiquibase(
+                "awaited-mutation-changelog.xml", (liquibase, connection) -> {
+                    liquibase.update();
+                    // the mutation sleeps a second per row, it is only visible once it was waited for
+                    assertEquals("2", queryString(connection, "SELECT sum(b) FROM awaited_mutation"));
+                    assertEquals("1", queryString(connection,
+                        "SELECT countIf(is_done) FROM system.mutations WHERE table = 'awaited_mutation'"));
+                }
+            );
+        });
+    }
+
+    @Test
+    void canFailOnFailedMutation() throws Exception {
+        withOptions(Map.of("mutation.await", true, "mutation.pollMillis", 100), () -> {
+            runLiquibase(
+                "failing-mutation-changelog.xml", (liquibase, connection) -> {
+                    long started = System.currentTimeMillis();
+                    try {
+                        Exception error = assertThrows(Exception.class, liquibase::update);
+                        assertTrue(hasCauseMessage(error, "Mutations failed"), "the failed mutation must be reported");
+                        // the mutation is retried forever, the changeset fails long before the wait times out
+                        assertTrue(System.currentTimeMillis() - started < TimeUnit.SECONDS.toMillis(30));
+                        assertEquals("0", queryString(connection,
+                            "SELECT count() FROM DATABASECHANGELOG WHERE ID = 'failing-mutation-2'"));
+                    } finally {
+                        try (Statement stmt = connection.createStatement()) {
+                            stmt.execute("KILL MUTATION WHERE table = 'failing_mutation'");
+                        }
+                    }
+                }
+            );
+        });
+    }
+
+    @Test
+    void canUpdateTableWithoutBlockColumns() {
+        // with the default options, a table created without the block columns cannot take a lightweight update
+        runLiquibase(
+            "plain-update-changelog.xml", (liquibase, connection) -> {
+                liquibase.update();
+                assertEquals("1", queryString(connection,
+                    "SELECT count() FROM system.mutations WHERE table = 'plain_update'"));
+                long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+                while (!"1".equals(queryString(connection, "SELECT a FROM plain_update WHERE id = 1"))) {
+                    assertTrue(System.currentTimeMillis() < deadline, "the mutation must update the row");
+                    Thread.sleep(100);
+                }
+            }
+        );
+    }
+
+    @Test
+    void canCoalesceUpdates() throws Exception {
+        @Language("ClickHouse")
+        String countMutations = "SELECT count(*) FROM system.mutations WHERE table = 'coalesced_updates'";
+        Map<String, Object> options = Map.of(
+            "mutation.coalesceUpdates", true, "mutation.await", true, "mutation.pollMillis", 100,
+            "mutation.lightweightUpdates", false);
+        withOptions(options, () -> {
+            runLiquibase(
+                "coalesced-updates-changelog.xml", (liquibase, connection) -> {
+                    liquibase.update();
+                    try (Statement stmt = connection.createStatement();
+                         var rs = stmt.executeQuery("SELECT a, b FROM coalesced_updates")) {
+                        assertTrue(rs.next());
+                        assertEquals(1, rs.getInt(1));
+                        assertEquals(2, rs.getInt(2));
+                    }
+                    try (Statement stmt = connection.createStatement(); var rs = stmt.executeQuery(countMutations)) {
+                        assertTrue(rs.next());
+                        assertEquals(1, rs.getInt(1));
+                    }
+                }
+            );
+        });
+    }
+
+    @Test
+    void canSplitMutationByPartition() throws Exception {
+        @Language("ClickHouse")
+        String countMutations = "SELECT count(*) FROM system.mutations WHERE table = 'partitioned_mutation'";
+        Map<String, Object> options = Map.of(
+            "mutation.partitionsPerBatch", 2, "mutation.pollMillis", 100, "mutation.lightweightUpdates", false);
+        withOptions(options, () -> {
+            runLiquibase(
+                "partitioned-mutation-changelog.xml", (liquibase, connection) -> {
+                    liquibase.update();
+                    try (Statement stmt = connection.createStatement();
+                         var rs = stmt.executeQuery("SELECT countIf(a = 1) FROM partitioned_mutation")) {
+                        assertTrue(rs.next());
+                        assertEquals(3, rs.getInt(1));
+                    }
+                    try (Statement stmt = connection.createStatement(); var rs = stmt.executeQuery(countMutations)) {
+                        assertTrue(rs.next());
+                        assertEquals(3, rs.getInt(1));
+                    }
+                    try (Statement stmt = connection.createStatement();
+                         var rs = stmt.executeQuery("SELECT count(*) FROM DATABASECHANGELOG_MUTATION_PROGRESS")) {
+                        assertTrue(rs.next());
+                        assertEquals(0, rs.getInt(1));
+                    }
+                }
+            );
+        });
+    }
+
+    @Test
+    void canLimitPendingMutations() throws Exception {
+        withOptions(Map.of("mutation.maxPendingPerTable", 1, "mutation.pollMillis", 100), () -> {
+            runLiquibase(
+                "limited-mutations-changelog.xml", (liquibase, connection) -> {
+                    liquibase.update();
+                    // the second mutation was only submitted once the first one was done
+                    assertEquals("2", queryString(connection,
+                        "SELECT count() FROM system.mutations WHERE table = 'limited_mutations'"));
+                    assertTrue(Integer.parseInt(queryString(connection,
+                        "SELECT dateDiff('second', min(create_time), max(create_time)) "
+                            + "FROM system.mutations WHERE table = 'limited_mutations'")) >= 2);
+                    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+                    while (!"6".equals(queryString(connection, "SELECT sum(b) FROM limited_mutations"))) {
+                        assertTrue(System.currentTimeMillis() < deadline, "the second mutation must see the first");
+                        Thread.sleep(100);
+                    }
+                }
+            );
+        });
+    }
+
+    @Test
+    void canBulkInsert() throws Exception {
+        withOptions(Map.of("insert.batchRows", 4, "insert.parallelSenders", 2), () -> {
+            runLiquibase(
+                "bulk-insert-changelog.xml", this::doWithV2Connection, (liquibase, connection) -> {
+                    String started = queryString(connection, "SELECT toString(now64(6))");
+                    liquibase.update();
+                    try (Statement stmt = connection.createStatement();
+                         var rs = stmt.executeQuery("SELECT count(*), sum(id), countIf(name = 'o''neill') "
+                                                        + "FROM bulk_insert")) {
+                        assertTrue(rs.next());
+                        assertEquals(12, rs.getInt(1));
+                        assertEquals(78, rs.getInt(2));
+                        assertEquals(1, rs.getInt(3));
+                    }
+                    try (Statement stmt = connection.createStatement()) {
+                        stmt.execute("SYSTEM FLUSH LOGS");
+                    }
+                    // the 10 rows of the file in batches of 4, and the 2 inserts in one batch
+                    @Language("ClickHouse")
+                    String inserts = "SELECT groupArray(written_rows) FROM (SELECT written_rows "
+                                         + "FROM system.query_log WHERE type = 'QueryFinish' AND query_kind = 'Insert' "
+                                         + "AND has(tables, 'default.bulk_insert') "
+                                         + "AND event_time_microseconds >= toDateTime64(?, 6) ORDER BY written_rows)";
+                    try (var pstmt = connection.prepareStatement(inserts)) {
+                        pstmt.setString(1, started);
+                        try (var rs = pstmt.executeQuery()) {
+                            assertTrue(rs.next());
+                            assertEquals("[2,2,4,4]", rs.getString(1));
+                        }
+                    }
+                }
+            );
+        });
+    }
+
+    @Test
+    void canThrottleBulkInsert() throws Exception {
+        // every batch of 2 rows makes a part, the batches wait from 2 parts on
+        Map<String, Object> options = Map.of(
+            "insert.batchRows", 2, "insert.parallelSenders", 2, "insert.throttlePartsPercent", 50,
+            "insert.throttlePollMillis", 200, "insert.throttleTimeoutSeconds", 10);
+        withOptions(options, () -> {
+            runLiquibase(
+                "throttled-insert-changelog.xml", (liquibase, connection) -> {
+                    liquibase.update();
+                    try (Statement stmt = connection.createStatement();
+                         var rs = stmt.executeQuery("SELECT count(*), sum(id) FROM throttled_insert")) {
+                        assertTrue(rs.next());
+                        assertEquals(10, rs.getInt(1));
+                        assertEquals(55, rs.getInt(2));
+                    }
+                }
+            );
+        });
+    }
+
+    @Test
+    void canRetryDeduplicatedInserts() throws Exception {
+        @Language("ClickHouse")
+        String forgetChangeSet = "ALTER TABLE DATABASECHANGELOG DELETE WHERE ID = 'deduplicated-insert-2' "
+                                     + "SETTINGS mutations_sync = 1";
+        withOptions(Map.of("insert.deduplicationTokens", true), () -> {
+            runLiquibase(
+                "deduplicated-insert-changelog.xml", (liquibase, connection) -> {
+                    liquibase.update();
+                    try (Statement stmt = connection.createStatement()) {
+                        // as if the changeset failed after its inserts
+                        stmt.execute(forgetChangeSet);
+                    }
+                }
+            );
+            runLiquibase(
+                "deduplicated-insert-changelog.xml", (liquibase, connection) -> {
+                    liquibase.update();
+                    try (Statement stmt = connection.createStatement();
+                         var rs = stmt.executeQuery("SELECT count(*), sum(id) FROM deduplicated_insert")) {
+                        assertTrue(rs.next());
+                        assertEquals(2, rs.getInt(1));
+                        assertEquals(3, rs.getInt(2));
+                    }
+                }
+            );
+        });
+    }
+
+    @Test
+    void canApplyChangeSetSettings() {
+        @Language("ClickHouse")
+        String selectQueries = "SELECT count(*) FROM system.query_log WHERE type = 'QueryFinish' "
+                                   + "AND log_comment = 'changeset-settings-2' AND Settings['max_threads'] = '1'";
+        runLiquibase(
+            "changeset-settings-changelog.xml", (liquibase, connection) -> {
+                liquibase.update();
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("SYSTEM FLUSH LOGS");
+                    try (var rs = stmt.executeQuery(selectQueries)) {
+                        assertTrue(rs.next());
+                        // the insert and the update
+                        assertEquals(2, rs.getInt(1));
+                    }
+                }
+            }
+        );
+    }
+
+    @Test
+    void canRejectMalformedChangeSetSettings() {
+        runLiquibase(
+            "malformed-settings-changelog.xml", (liquibase, connection) -> {
+                Exception error = assertThrows(Exception.class, liquibase::update);
+                assertTrue(hasCauseMessage(error, "Invalid settings attribute"), "the attribute must be reported");
+                // the changelog fails validation, before its first changeset runs
+                assertEquals("0", queryString(connection,
+                    "SELECT count() FROM system.tables WHERE name = 'malformed_settings'"));
+            }
+        );
+    }
+
+    @Test
+    void canLoadFile() {
+        runLiquibase(
+            "load-file-changelog.xml", this::doWithV2Connection, (liquibase, connection) -> {
+                liquibase.update();
+                try (Statement stmt = connection.createStatement();
+                     var rs = stmt.executeQuery("SELECT count(*), sum(id) FROM load_file")) {
+                    assertTrue(rs.next());
+                    assertEquals(20, rs.getInt(1));
+                    assertEquals(110, rs.getInt(2));
+                }
+            }
+        );
+    }
+
+    @Test
+    void canLoadFileData() {
+        runLiquibase(
+            "load-file-data-changelog.xml", this::doWithV2Connection, (liquibase, connection) -> {
+                liquibase.update();
+                // the file is unchanged, so the runOnChange changeset is not run again
+                liquibase.update();
+                try (Statement stmt = connection.createStatement();
+                     var rs = stmt.executeQuery("SELECT count(*), sum(id) FROM load_file_data")) {
+                    assertTrue(rs.next());
+                    assertEquals(3, rs.getInt(1));
+                    assertEquals(6, rs.getInt(2));
+                }
+            }
+        );
+    }
+
+    @Test
+    void canDeleteInPartition() {
+        runLiquibase(
+            "partition-delete-changelog.xml", (liquibase, connection) -> {
+                liquibase.update();
+                try (Statement stmt = connection.createStatement();
+                     var rs = stmt.executeQuery("SELECT month, id FROM partition_delete ORDER BY month, id")) {
+                    assertTrue(rs.next());
+                    assertEquals(202401, rs.getInt(1));
+                    assertEquals(2, rs.getInt(2));
+                    assertTrue(rs.next());
+                    assertEquals(202402, rs.getInt(1));
+                    assertEquals(1, rs.getInt(2));
+                    assertTrue(rs.next());
+                    assertEquals(202402, rs.getInt(1));
+                    assertEquals(2, rs.getInt(2));
+                    assertFalse(rs.next());
+                }
+            }
+        );
+    }
+
+    @Test
+    void canMigrateChangeLogTableWithoutVersion() {
+        @Language("ClickHouse")
+        String createLegacyTable = "CREATE TABLE DATABASECHANGELOG_LEGACY "
+                                       + "ENGINE = ReplacingMergeTree() ORDER BY (ID, AUTHOR, FILENAME) "
+                                       + "AS SELECT * EXCEPT VERSION FROM DATABASECHANGELOG";
+        @Language("ClickHouse")
+        String selectEngine = "SELECT engine_full FROM system.tables "
+                                  + "WHERE database = 'default' AND name = 'DATABASECHANGELOG'";
+        runLiquibase(
+            getChangelogFileName(),
+            (liquibase, connection) -> {
+                liquibase.update();
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute(createLegacyTable);
+                    stmt.execute("EXCHANGE TABLES DATABASECHANGELOG AND DATABASECHANGELOG_LEGACY");
+                    stmt.execute("DROP TABLE DATABASECHANGELOG_LEGACY");
+                }
+                // the changesets which are already in the history must not be executed again
+                liquibase.update();
+                try (Statement stmt = connection.createStatement(); var rs = stmt.executeQuery(selectEngine)) {
+                    assertTrue(rs.next());
+                    assertTrue(rs.getString(1).startsWith("ReplacingMergeTree(VERSION)"));
+                }
+            }
+        );
+    }
+
+    @Test
+    void canMigrateLockTableToEmbeddedRocksDB() throws Exception {
+        @Language("ClickHouse")
+        String selectEngine = "SELECT engine FROM system.tables "
+                                  + "WHERE database = 'default' AND name = 'DATABASECHANGELOGLOCK'";
+        runLiquibase(getChangelogFileName(), (liquibase, connection) -> liquibase.update());
+        withOptions(Map.of("lock.engine", "EmbeddedRocksDB"), () -> {
+            runLiquibase(
+                getChangelogFileName(), (liquibase, connection) -> {
+                    liquibase.update();
+                    // the lock can be taken again from the migrated table
+                    liquibase.update();
+                    try (Statement stmt = connection.createStatement(); var rs = stmt.executeQuery(selectEngine)) {
+                        assertTrue(rs.next());
+                        assertEquals("EmbeddedRocksDB", rs.getString(1));
+                    }
+                    try (Statement stmt = connection.createStatement()) {
+                        // the other tests use the default engine
+                        stmt.execute("DROP TABLE DATABASECHANGELOGLOCK");
+                    }
+                }
+            );
+        });
+    }
+
+    @Test
+    void canAcquireKeyValueLockOnce() throws Exception {
+        @Language("ClickHouse")
+        String countLocks = "SELECT count(*) FROM DATABASECHANGELOGLOCK WHERE ID = 1 AND LOCKED = 1";
+        withOptions(Map.of("lock.engine", "EmbeddedRocksDB"), () -> {
+            runLiquibase(
+                getChangelogFileName(), (liquibase, connection) -> {
+                    Database database = liquibase.getDatabase();
+                    var lockService = LockServiceFactory.getInstance().getLockService(database);
+                    var config = ParamsLoader.getLiquibaseClickhouseProperties();
+                    String selectHolder = config.accept(new SelectLockHolderTemplate(database));
+                    String lockByOther = config.accept(new LockTemplate(database, "other-process", "now64()"));
+                    lockService.init();
+                    try (var threads = Executors.newSingleThreadExecutor()) {
+                        for (int round = 0; round < 5; round++) {
+                            CyclicBarrier start = new CyclicBarrier(2);
+                            // another process acquires the lock the same way: it writes the free lock and reads
+                            // the holder back once the competing writes are done
+                            Future<Boolean> other = threads.submit(() -> {
+                                try (Connection otherConnection = clickHouseContainer.createConnection(
+                                    CONNECTION_PARAMS); Statement stmt = otherConnection.createStatement()) {
+                                    start.await();
+                                    if (!"0".equals(queryString(otherConnection, countLocks))) {
+                                        return false;
+                                    }
+                                    stmt.execute(lockByOther);
+                                    Thread.sleep(500);
+                                    return "other-process".equals(queryString(otherConnection, selectHolder));
+                                }
+                            });
+                            start.await();
+                            boolean acquired = lockService.acquireLock();
+                            boolean otherAcquired = other.get();
+                            assertTrue(acquired != otherAcquired, "exactly one process must hold the lock");
+                            assertEquals(acquired ? LockDatabaseChangeLogClickHouse.getLockedBy() : "other-process",
+                                queryString(connection, selectHolder));
+                            lockService.forceReleaseLock();
+                        }
+                    }
+                    try (Statement stmt = connection.createStatement()) {
+                        // the other tests use the default engine
+                        stmt.execute("DROP TABLE DATABASECHANGELOGLOCK");
+                    }
+                }
+            );
+        });
+    }
+
+    @Test
+    void canRunIndependentChangeSetsInParallel() {
+        @Language("ClickHouse")
+        String countRows = "SELECT (SELECT count(*) FROM parallel_a) + (SELECT count(*) FROM parallel_b)";
+        @Language("ClickHouse")
+        String overlappingSleeps = "SELECT count(*), max(query_start_time_microseconds) < min(event_time_microseconds) "
+                                       + "FROM system.query_log WHERE type = 'QueryFinish' AND is_initial_query "
+                                       + "AND query LIKE 'SELECT sleep(1), %parallel-sleep-%'";
+        @Language("ClickHouse")
+        String taggedChangeSets = "SELECT arrayStringConcat(arraySort(groupArray(ID)), ',') FROM DATABASECHANGELOG "
+                                      + "WHERE TAG = 'parallel-tag'";
+        runLiquibase(
+            "parallel-changelog.xml", (liquibase, connection) -> {
+                ParallelChangeLogUpdate update = new ParallelChangeLogUpdate(
+                    liquibase.getDatabase(), () -> clickHouseContainer.createConnection(CONNECTION_PARAMS));
+                update.update(liquibase.getDatabaseChangeLog(), new Contexts(), new LabelExpression());
+                // the changesets are recorded, so nothing runs the second time
+                update.update(liquibase.getDatabaseChangeLog(), new Contexts(), new LabelExpression());
+                try (Statement stmt = connection.createStatement(); var rs = stmt.executeQuery(countRows)) {
+                    assertTrue(rs.next());
+                    assertEquals(3, rs.getInt(1));
+                }
+                // the precondition saw the earlier changeset recorded, and the tag went on the changeset before it
+                assertEquals("parallel-7,parallel-8", queryString(connection, taggedChangeSets));
+                // the two sleeping changesets overlapped
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("SYSTEM FLUSH LOGS");
+                    try (var rs = stmt.executeQuery(overlappingSleeps)) {
+                        assertTrue(rs.next());
+                        assertEquals(2, rs.getInt(1));
+                        assertTrue(rs.getBoolean(2));
+                    }
+                }
+            }
+        );
+    }
+
     @Override
     protected void doWithConnection(BaseClickHouseTestCase.ThrowingConsumer<Connection> consumer) {
-        String queryString = "?clickhouse.jdbc.v1=true&" + JdbcConfig.PROP_EXTERNAL_DATABASE + "=false";
-        try (Connection connection = clickHouseContainer.createConnection(queryString)) {
+        try (Connection connection = clickHouseContainer.createConnection(CONNECTION_PARAMS)) {
+            consumer.accept(connection);
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    private void doWithV2Connection(BaseClickHouseTestCase.ThrowingConsumer<Connection> consumer) {
+        try (Connection connection = clickHouseContainer.createConnection(V2_CONNECTION_PARAMS)) {
             consumer.accept(connection);
         } catch (Exception e) {
             fail(e);
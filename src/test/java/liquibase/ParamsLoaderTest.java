@@ -21,13 +21,16 @@
 package liquibase;
 
 import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.ExtensionOptions;
 import liquibase.ext.clickhouse.params.LiquibaseClickHouseConfig;
 import liquibase.ext.clickhouse.params.ParamsLoader;
 import liquibase.ext.clickhouse.params.StandaloneConfig;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ParamsLoaderTest {
 
@@ -46,4 +49,76 @@ public class ParamsLoaderTest {
             ParamsLoader.getLiquibaseClickhouseProperties("testLiquibaseClickhouseBroken");
         assertInstanceOf(StandaloneConfig.class, params);
     }
+
+    @Test
+    void loadExtensionOptions() {
+        ExtensionOptions options = ParamsLoader.getExtensionOptions("testLiquibaseClickhouse");
+        assertEquals(100, options.markRanBatchSize());
+        assertTrue(options.appendOnlyReruns());
+        assertTrue(options.changeLogFingerprint());
+        assertEquals(8, options.changeLogParallelism());
+        assertTrue(options.asyncDdl());
+        assertEquals(300, options.ddlTimeoutSeconds());
+        assertEquals(500, options.ddlPollMillis());
+        assertTrue(options.awaitMutations());
+        assertEquals(120, options.mutationTimeoutSeconds());
+        assertEquals(200, options.mutationPollMillis());
+        assertTrue(options.coalesceUpdates());
+        assertFalse(options.lightweightUpdates());
+        assertFalse(options.lightweightDeletes());
+        assertEquals(2, options.mutationPartitionsPerBatch());
+        assertEquals(4, options.maxPendingMutationsPerTable());
+        assertEquals(50, options.maxPendingMutationsTotal());
+        assertEquals(100000, options.insertBatchRows());
+        assertEquals(4, options.insertParallelSenders());
+        assertTrue(options.insertDeduplicationTokens());
+        assertEquals(80, options.insertThrottlePartsPercent());
+        assertEquals(500, options.insertThrottlePollMillis());
+        assertEquals(300, options.insertThrottleTimeoutSeconds());
+        assertEquals(5, options.retryMaxAttempts());
+        assertEquals(500, options.retryBackoffInitialMillis());
+        assertEquals(20000, options.retryBackoffMaxMillis());
+        assertEquals(60, options.lockLeaseSeconds());
+        assertEquals(250, options.lockBackoffInitialMillis());
+        assertEquals(10000, options.lockBackoffMaxMillis());
+        assertTrue(options.lockFairQueue());
+        assertEquals(ExtensionOptions.EMBEDDED_ROCKS_DB, options.lockEngine());
+        assertTrue(options.keyValueLockTable());
+    }
+
+    @Test
+    void loadDefaultExtensionOptions() {
+        ExtensionOptions options = ParamsLoader.getExtensionOptions("testLiquibaseClickhouseBroken");
+        assertEquals(0, options.markRanBatchSize());
+        assertFalse(options.appendOnlyReruns());
+        assertFalse(options.changeLogFingerprint());
+        assertEquals(4, options.changeLogParallelism());
+        assertFalse(options.asyncDdl());
+        assertEquals(600, options.ddlTimeoutSeconds());
+        assertEquals(1000, options.ddlPollMillis());
+        assertFalse(options.awaitMutations());
+        assertEquals(3600, options.mutationTimeoutSeconds());
+        assertEquals(1000, options.mutationPollMillis());
+        assertFalse(options.coalesceUpdates());
+        assertTrue(options.lightweightUpdates());
+        assertTrue(options.lightweightDeletes());
+        assertEquals(0, options.mutationPartitionsPerBatch());
+        assertEquals(0, options.maxPendingMutationsPerTable());
+        assertEquals(0, options.maxPendingMutationsTotal());
+        assertEquals(0, options.insertBatchRows());
+        assertEquals(1, options.insertParallelSenders());
+        assertFalse(options.insertDeduplicationTokens());
+        assertEquals(0, options.insertThrottlePartsPercent());
+        assertEquals(1000, options.insertThrottlePollMillis());
+        assertEquals(600, options.insertThrottleTimeoutSeconds());
+        assertEquals(1, options.retryMaxAttempts());
+        assertEquals(1000, options.retryBackoffInitialMillis());
+        assertEquals(30000, options.retryBackoffMaxMillis());
+        assertEquals(0, options.lockLeaseSeconds());
+        assertEquals(0, options.lockBackoffInitialMillis());
+        assertEquals(30000, options.lockBackoffMaxMillis());
+        assertFalse(options.lockFairQueue());
+        assertEquals(ExtensionOptions.COLLAPSING_MERGE_TREE, options.lockEngine());
+        assertFalse(options.keyValueLockTable());
+    }
 }
@@ -0,0 +1,54 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.database;
+
+import liquibase.statement.core.InsertStatement;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BulkInsertUnitTest {
+
+    @Test
+    void splitsRowsIntoBatchesOfAtMostTheGivenSize() {
+        List<InsertStatement> rows = List.of(row(1), row(2), row(3), row(4), row(5));
+        assertEquals(List.of(List.of(rows.get(0), rows.get(1)), List.of(rows.get(2), rows.get(3)),
+            List.of(rows.get(4))), batches(rows, 2));
+        assertEquals(List.of(rows), batches(rows, 10));
+    }
+
+    @Test
+    void startsNewBatchWhenColumnsChange() {
+        InsertStatement named = row(3).addColumnValue("name", "c");
+        List<InsertStatement> rows = List.of(row(1), row(2), named, row(4));
+        assertEquals(List.of(List.of(rows.get(0), rows.get(1)), List.of(named), List.of(rows.get(3))),
+            batches(rows, 10));
+    }
+
+    private static List<List<InsertStatement>> batches(List<InsertStatement> rows, int batchRows) {
+        return new BulkInsert(new ClickHouseDatabase(), rows).batches(batchRows);
+    }
+
+    private static InsertStatement row(int id) {
+        return new InsertStatement("db", null, "events").addColumnValue("id", id);
+    }
+}
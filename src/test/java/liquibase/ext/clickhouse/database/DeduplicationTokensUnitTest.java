@@ -0,0 +1,84 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.database;
+
+import liquibase.change.core.RawSQLChange;
+import liquibase.changelog.ChangeSet;
+import liquibase.ext.clickhouse.params.StandaloneConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static liquibase.ext.clickhouse.params.TestParams.withParams;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeduplicationTokensUnitTest {
+
+    private static final Map<String, Object> ENABLED = Map.of("insert.deduplicationTokens", true);
+
+    @Test
+    void numbersTheInsertsOfChangeSet() throws Exception {
+        withParams(new StandaloneConfig(), ENABLED, () -> {
+            ChangeSet changeSet = changeSet("insert-1", false, "INSERT INTO events VALUES (1)");
+            DeduplicationTokens tokens = DeduplicationTokens.of(changeSet);
+            String first = tokens.next();
+            assertTrue(first.endsWith("_0"));
+            assertEquals(first.replace("_0", "_1"), tokens.next());
+            assertTrue(tokens.belongsTo(changeSet));
+            assertFalse(tokens.belongsTo(changeSet("insert-1", false, "INSERT INTO events VALUES (1)")));
+        });
+    }
+
+    @Test
+    void derivesTokensFromChangeSet() throws Exception {
+        withParams(new StandaloneConfig(), ENABLED, () -> {
+            String token = DeduplicationTokens.of(changeSet("insert-1", false, "INSERT INTO events VALUES (1)"))
+                               .next();
+            // the same changeset run again sends the same tokens
+            assertEquals(token, DeduplicationTokens.of(
+                changeSet("insert-1", false, "INSERT INTO events VALUES (1)")).next());
+            assertNotEquals(token, DeduplicationTokens.of(
+                changeSet("insert-2", false, "INSERT INTO events VALUES (1)")).next());
+            // an edited changeset inserts its rows again
+            assertNotEquals(token, DeduplicationTokens.of(
+                changeSet("insert-1", false, "INSERT INTO events VALUES (2)")).next());
+        });
+    }
+
+    @Test
+    void leavesInsertsWithoutTokens() throws Exception {
+        withParams(new StandaloneConfig(), ENABLED, () -> {
+            assertNull(DeduplicationTokens.of(changeSet("insert-1", true, "INSERT INTO events VALUES (1)")));
+            assertNull(DeduplicationTokens.of(null));
+        });
+        withParams(new StandaloneConfig(), Map.of(), () ->
+            assertNull(DeduplicationTokens.of(changeSet("insert-1", false, "INSERT INTO events VALUES (1)"))));
+    }
+
+    private static ChangeSet changeSet(String id, boolean alwaysRun, String sql) {
+        ChangeSet changeSet = new ChangeSet(id, "test", alwaysRun, false, "changelog.xml", null, null, null);
+        changeSet.addChange(new RawSQLChange(sql));
+        return changeSet;
+    }
+}
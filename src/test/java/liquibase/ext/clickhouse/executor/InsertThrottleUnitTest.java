@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.executor;
+
+import liquibase.executor.jvm.JdbcExecutor;
+import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+import liquibase.ext.clickhouse.params.StandaloneConfig;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.RawParameterizedSqlStatement;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import static liquibase.ext.clickhouse.params.TestParams.withParams;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InsertThrottleUnitTest {
+
+    private static final Map<String, Object> OPTIONS = Map.of(
+        "insert.throttlePartsPercent", 50, "insert.throttlePollMillis", 1, "insert.throttleTimeoutSeconds", 10);
+    private static final String TABLE_SETTINGS = "MergeTree ORDER BY id SETTINGS parts_to_delay_insert = 10";
+
+    @Test
+    void waitsUntilMergesCatchUp() throws Exception {
+        // throttled from 5 parts, half of the parts_to_delay_insert of the table
+        PartsExecutor executor = new PartsExecutor(TABLE_SETTINGS, 6, 5, 2);
+        withParams(new StandaloneConfig(), OPTIONS, () -> assertFalse(throttle(executor).awaitCapacity()));
+        assertEquals(3, executor.pressureQueries);
+    }
+
+    @Test
+    void sendsOneBatchAtATimePastHalfOfThreshold() throws Exception {
+        PartsExecutor executor = new PartsExecutor(TABLE_SETTINGS, 3);
+        withParams(new StandaloneConfig(), OPTIONS, () -> assertTrue(throttle(executor).awaitCapacity()));
+        assertEquals(1, executor.pressureQueries);
+    }
+
+    @Test
+    void usesServerLimitWithoutTableSetting() throws Exception {
+        // throttled from 75 parts, half of the server default of 150
+        PartsExecutor executor = new PartsExecutor("MergeTree ORDER BY id", 74, 75, 10);
+        withParams(new StandaloneConfig(), OPTIONS, () -> assertTrue(throttle(executor).awaitCapacity()));
+        assertEquals(1, executor.pressureQueries);
+    }
+
+    @Test
+    void insertsAnywayAfterTimeout() throws Exception {
+        PartsExecutor executor = new PartsExecutor(TABLE_SETTINGS, 10, 10);
+        Map<String, Object> options = Map.of("insert.throttlePartsPercent", 50, "insert.throttleTimeoutSeconds", 0);
+        withParams(new StandaloneConfig(), options, () -> assertTrue(throttle(executor).awaitCapacity()));
+        assertEquals(1, executor.pressureQueries);
+    }
+
+    private static InsertThrottle throttle(PartsExecutor executor) {
+        return new InsertThrottle(new ClickHouseDatabase(), executor, "db", "events");
+    }
+
+    /**
+     * Answers the queries of the throttle with the table settings and then the given active part counts.
+     */
+    private static final class PartsExecutor extends JdbcExecutor {
+
+        private final String engineFull;
+        private final Deque<Integer> activeParts = new ArrayDeque<>();
+        private int pressureQueries;
+
+        PartsExecutor(String engineFull, Integer... activeParts) {
+            this.engineFull = engineFull;
+            this.activeParts.addAll(List.of(activeParts));
+        }
+
+        @Override
+        public List<Map<String, ?>> queryForList(SqlStatement sql) {
+            if (((RawParameterizedSqlStatement) sql).getSql().contains("SERVER_LIMIT")) {
+                return List.of(Map.of("SERVER_LIMIT", 150L, "ENGINE_FULL", engineFull));
+            }
+            pressureQueries++;
+            return List.of(Map.of("ACTIVE_PARTS", activeParts.removeFirst(), "MERGES", 1));
+        }
+    }
+}
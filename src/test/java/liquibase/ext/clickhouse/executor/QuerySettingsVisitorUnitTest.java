@@ -0,0 +1,94 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.executor;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.exception.LiquibaseException;
+import liquibase.ext.clickhouse.database.ChangeSetSettings;
+import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuerySettingsVisitorUnitTest {
+
+    private static final ClickHouseDatabase DATABASE = new ClickHouseDatabase();
+
+    @Test
+    void splicesSettingsBeforeInsertedValues() {
+        assertEquals("INSERT INTO events (id) SETTINGS max_threads = 2 VALUES (1)",
+            modify("INSERT INTO events (id) VALUES (1)", Map.of("max_threads", "2")));
+    }
+
+    @Test
+    void appendsSettingsToOtherStatements() {
+        assertEquals("ALTER TABLE events DELETE WHERE id = 1 SETTINGS mutations_sync = 0",
+            modify("ALTER TABLE events DELETE WHERE id = 1;", Map.of("mutations_sync", "0")));
+        // table settings of DDL are left alone
+        assertEquals("CREATE TABLE events (id UInt64) ENGINE = Log",
+            modify("CREATE TABLE events (id UInt64) ENGINE = Log", Map.of("max_threads", "2")));
+    }
+
+    @Test
+    void mergesIntoTrailingSettings() {
+        assertEquals("SELECT count() FROM events SETTINGS max_threads = 4, priority = 5",
+            modify("SELECT count() FROM events SETTINGS max_threads = 4 ;", Map.of("priority", "5")));
+    }
+
+    @Test
+    void quotesNonLiteralValues() {
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("max_threads", "2");
+        settings.put("use_query_cache", "true");
+        settings.put("workload", "back'fill");
+        assertEquals("SELECT 1 SETTINGS max_threads = 2, use_query_cache = true, workload = 'back''fill'",
+            modify("SELECT 1", settings));
+    }
+
+    @Test
+    void readsChangeSetSettings() throws LiquibaseException {
+        ChangeSet changeSet = changeSet("max_threads=2, workload='back\\'fill', priority = -1");
+        assertEquals(Map.of("max_threads", "2", "workload", "back'fill", "priority", "-1"),
+            ChangeSetSettings.of(changeSet));
+        assertEquals(Map.of(), ChangeSetSettings.of(changeSet(" ")));
+    }
+
+    @Test
+    void rejectsMalformedChangeSetSettings() {
+        LiquibaseException error = assertThrows(LiquibaseException.class,
+            () -> ChangeSetSettings.of(changeSet("max_threads=2; priority=5")));
+        assertTrue(error.getMessage().contains("Invalid settings attribute"));
+        assertThrows(LiquibaseException.class, () -> ChangeSetSettings.of(changeSet("workload='backfill")));
+    }
+
+    private static String modify(String sql, Map<String, String> settings) {
+        return new QuerySettingsVisitor(settings).modifySql(sql, DATABASE);
+    }
+
+    private static ChangeSet changeSet(String settings) {
+        return new ChangeSet("settings", "test", false, false, "changelog.xml", null, null, null)
+                   .setAttribute("settings", settings);
+    }
+}
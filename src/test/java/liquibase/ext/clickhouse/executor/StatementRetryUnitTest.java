@@ -0,0 +1,168 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.executor;
+
+import com.typesafe.config.ConfigFactory;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.clickhouse.executor.StatementRetry.ErrorClass;
+import liquibase.ext.clickhouse.params.ExtensionOptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatementRetryUnitTest {
+
+    private static final ExtensionOptions OPTIONS = ExtensionOptions.of(ConfigFactory.parseMap(Map.of(
+        "retry.maxAttempts", 3,
+        "retry.backoffInitialMillis", 1,
+        "retry.backoffMaxMillis", 4)));
+    private static final String TAGGED_INSERT =
+        "INSERT INTO db.events (id) SETTINGS insert_deduplication_token = 'abc_1' VALUES (1)";
+
+    @Test
+    void classifiesTransientErrors() {
+        assertEquals(ErrorClass.OVERLOAD, StatementRetry.classify(new SQLException("Too many parts", "HY000", 252)));
+        assertEquals(ErrorClass.TIMEOUT, StatementRetry.classify(
+            new DatabaseException(new RuntimeException("Code: 159. DB::Exception: Timeout exceeded"))));
+        assertEquals(ErrorClass.CONNECTION, StatementRetry.classify(
+            new DatabaseException(new SQLException(new SocketTimeoutException("Read timed out")))));
+        assertEquals(ErrorClass.CONNECTION, StatementRetry.classify(new IOException("Connection reset")));
+    }
+
+    @Test
+    void classifiesPermanentErrors() {
+        assertNull(StatementRetry.classify(new SQLException("Unknown table", "HY000", 60)));
+        assertNull(StatementRetry.classify(new DatabaseException("Code: 62. DB::Exception: Syntax error")));
+        // the first error code found decides, even if a transient error lies deeper
+        assertNull(StatementRetry.classify(
+            new DatabaseException(new SQLException("Syntax error", "HY000", 62, new IOException("reset")))));
+        assertNull(StatementRetry.classify(new DatabaseException("failed")));
+    }
+
+    @Test
+    void tellsIdempotentStatements() {
+        assertTrue(StatementRetry.isIdempotent("SELECT count() FROM events"));
+        assertTrue(StatementRetry.isIdempotent("CREATE TABLE IF NOT EXISTS events (id UInt64) ENGINE = Log"));
+        assertTrue(StatementRetry.isIdempotent("DROP TABLE IF EXISTS events"));
+        assertTrue(StatementRetry.isIdempotent("ALTER TABLE events ADD COLUMN IF NOT EXISTS name String"));
+        assertTrue(StatementRetry.isIdempotent("ALTER TABLE events DELETE WHERE id = 1"));
+        assertTrue(StatementRetry.isIdempotent("DELETE FROM events WHERE id = 1"));
+        assertTrue(StatementRetry.isIdempotent(TAGGED_INSERT));
+    }
+
+    @Test
+    void tellsNonIdempotentStatements() {
+        assertFalse(StatementRetry.isIdempotent("CREATE TABLE events (id UInt64) ENGINE = Log"));
+        assertFalse(StatementRetry.isIdempotent("ALTER TABLE events ADD COLUMN name String"));
+        assertFalse(StatementRetry.isIdempotent("ALTER TABLE events UPDATE name = '' WHERE 1"));
+        assertFalse(StatementRetry.isIdempotent("ALTER TABLE events DROP PARTITION 202401"));
+        assertFalse(StatementRetry.isIdempotent("RENAME TABLE events TO events_old"));
+        assertFalse(StatementRetry.isIdempotent("INSERT INTO events (id) VALUES (1)"));
+        // a table or view filled by the statement is not filled again when only its creation is guarded
+        assertFalse(StatementRetry.isIdempotent(
+            "CREATE TABLE IF NOT EXISTS events_copy ENGINE = Log AS SELECT * FROM events"));
+        assertFalse(StatementRetry.isIdempotent(
+            "CREATE MATERIALIZED VIEW IF NOT EXISTS events_mv ENGINE = Log POPULATE AS SELECT id FROM events"));
+        assertFalse(StatementRetry.isIdempotent("CREATE TABLE IF NOT EXISTS events_empty EMPTY AS events"));
+        assertFalse(StatementRetry.isIdempotent(
+            "CREATE OR REPLACE TABLE events_copy ENGINE = Log AS (SELECT * FROM events)"));
+    }
+
+    @Test
+    void retriesTransientErrors() throws DatabaseException {
+        AtomicInteger attempts = new AtomicInteger();
+        String result = new StatementRetry(OPTIONS, (catalogName, tableName) -> false).run(
+            List.of("SELECT 1"), () -> {
+                if (attempts.incrementAndGet() < 3) {
+                    throw new DatabaseException(new SQLException("Too many parts", "HY000", 252));
+                }
+                return "done";
+            });
+        assertEquals("done", result);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void failsAfterTheLastAttempt() {
+        AtomicInteger attempts = new AtomicInteger();
+        DatabaseException error = new DatabaseException(new SQLException("Network error", "HY000", 210));
+        DatabaseException thrown = assertThrows(DatabaseException.class,
+            () -> new StatementRetry(OPTIONS, (catalogName, tableName) -> false).run(List.of("SELECT 1"), () -> {
+                attempts.incrementAndGet();
+                throw error;
+            }));
+        assertSame(error, thrown);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void doesNotRetryPermanentErrors() {
+        assertEquals(1, countAttempts("SELECT 1", new SQLException("Unknown table", "HY000", 60), true));
+    }
+
+    @Test
+    void doesNotRetryNonIdempotentStatements() {
+        assertEquals(1, countAttempts(
+            "ALTER TABLE events UPDATE id = 2 WHERE 1", new SQLException("Too many parts", "HY000", 252), true));
+    }
+
+    @Test
+    void retriesTaggedInsertsOnlyIntoDeduplicatingTables() {
+        SQLException error = new SQLException("Too many parts", "HY000", 252);
+        assertEquals(3, countAttempts(TAGGED_INSERT, error, true));
+        assertEquals(1, countAttempts(TAGGED_INSERT, error, false));
+    }
+
+    @Test
+    void readsTheTableOfTaggedInserts() throws DatabaseException {
+        List<String> tables = new ArrayList<>();
+        StatementRetry retry = new StatementRetry(OPTIONS, (catalogName, tableName) -> {
+            tables.add(catalogName + "." + tableName);
+            return true;
+        });
+        retry.run(List.of(TAGGED_INSERT,
+            "INSERT INTO TABLE `events`(id) SETTINGS insert_deduplication_token = 'abc_2' VALUES (2)",
+            "SELECT 1"), () -> null);
+        assertEquals(List.of("db.events", "null.events"), tables);
+    }
+
+    private static int countAttempts(String sql, SQLException error, boolean deduplicated) {
+        AtomicInteger attempts = new AtomicInteger();
+        StatementRetry retry = new StatementRetry(OPTIONS, (catalogName, tableName) -> deduplicated);
+        assertThrows(DatabaseException.class, () -> retry.run(List.of(sql), () -> {
+            attempts.incrementAndGet();
+            throw new DatabaseException(error);
+        }));
+        return attempts.get();
+    }
+}
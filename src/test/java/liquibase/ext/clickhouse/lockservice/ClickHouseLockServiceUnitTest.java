@@ -0,0 +1,49 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.lockservice;
+
+import liquibase.exception.DatabaseException;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClickHouseLockServiceUnitTest {
+
+    @Test
+    void tellsExistingLockRecord() {
+        assertTrue(ClickHouseLockService.isKeyExistsError(new DatabaseException(
+            new SQLException("Code: 999. Coordination::Exception: Transaction failed (Node exists)", "HY000", 999))));
+        assertTrue(ClickHouseLockService.isKeyExistsError(new DatabaseException(
+            "Code: 999. DB::Exception: Attempt to insert values that already exist in KeeperMap")));
+    }
+
+    @Test
+    void tellsOtherLockErrors() {
+        // the insert may have reached Keeper, so a broken connection is not a lost race
+        assertFalse(ClickHouseLockService.isKeyExistsError(new DatabaseException(
+            new SQLException("Code: 999. Coordination::Exception: Connection loss", "HY000", 999))));
+        assertFalse(ClickHouseLockService.isKeyExistsError(new DatabaseException(
+            new SQLException("Code: 210. DB::NetException: Node exists in the cluster", "HY000", 210))));
+        assertFalse(ClickHouseLockService.isKeyExistsError(new DatabaseException("Read timed out")));
+    }
+}
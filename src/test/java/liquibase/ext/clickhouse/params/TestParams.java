@@ -0,0 +1,56 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.params;
+
+import com.typesafe.config.ConfigFactory;
+
+import java.util.Map;
+
+/**
+ * Replaces the configuration read by {@link ParamsLoader} while a unit test runs.
+ */
+public final class TestParams {
+
+    private TestParams() {
+    }
+
+    public static void withParams(LiquibaseClickHouseConfig config, Map<String, ?> options, ThrowingRunnable action)
+        throws Exception {
+        set("liquibaseClickhouseProperties", config);
+        set("extensionOptions", ExtensionOptions.of(ConfigFactory.parseMap(options)));
+        try {
+            action.run();
+        } finally {
+            set("liquibaseClickhouseProperties", null);
+            set("extensionOptions", null);
+        }
+    }
+
+    private static void set(String field, Object value) throws NoSuchFieldException, IllegalAccessException {
+        var f = ParamsLoader.class.getDeclaredField(field);
+        f.setAccessible(true);
+        f.set(null, value);
+    }
+
+    @FunctionalInterface
+    public interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
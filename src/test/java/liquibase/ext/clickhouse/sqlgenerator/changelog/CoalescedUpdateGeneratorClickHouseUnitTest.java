@@ -0,0 +1,58 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changelog;
+
+import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+import liquibase.ext.clickhouse.statement.CoalescedUpdateStatement;
+import liquibase.sql.Sql;
+import liquibase.statement.core.UpdateStatement;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoalescedUpdateGeneratorClickHouseUnitTest {
+
+    private static final ClickHouseDatabase DATABASE = new ClickHouseDatabase();
+
+    private final CoalescedUpdateGeneratorClickHouse generator = new CoalescedUpdateGeneratorClickHouse();
+
+    @Test
+    void joinsUpdatesIntoOneAlterTable() {
+        UpdateStatement first = new UpdateStatement("db", null, "events")
+                                    .addNewColumnValue("a", 1)
+                                    .setWhereClause("id = 1");
+        UpdateStatement second = new UpdateStatement("db", null, "events")
+                                     .addNewColumnValue("b", "x")
+                                     .addNewColumnValue("c", null)
+                                     .setWhereClause("id > 1");
+        Sql[] sql = generator.generateSql(new CoalescedUpdateStatement(List.of(first, second)), DATABASE, null);
+        assertEquals(1, sql.length);
+        assertEquals("ALTER TABLE db.events UPDATE a = 1 WHERE id = 1, UPDATE b = 'x', c = NULL WHERE id > 1",
+            sql[0].toSql());
+    }
+
+    @Test
+    void rejectsNoUpdates() {
+        assertTrue(generator.validate(new CoalescedUpdateStatement(List.of()), DATABASE, null).hasErrors());
+    }
+}
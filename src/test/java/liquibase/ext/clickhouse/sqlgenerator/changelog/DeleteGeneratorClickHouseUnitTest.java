@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changelog;
+
+import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+import liquibase.ext.clickhouse.database.ServerFeatures;
+import liquibase.ext.clickhouse.params.ClusterConfig;
+import liquibase.ext.clickhouse.params.LiquibaseClickHouseConfig;
+import liquibase.ext.clickhouse.params.StandaloneConfig;
+import liquibase.ext.clickhouse.statement.PartitionedDeleteStatement;
+import liquibase.statement.core.DeleteStatement;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static liquibase.ext.clickhouse.params.TestParams.withParams;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DeleteGeneratorClickHouseUnitTest {
+
+    private static final ClusterConfig CLUSTER = new ClusterConfig("company", "/liquibase");
+    private static final ServerFeatures SERVER_24_3 = new ServerFeatures(24, 3, false, true);
+    private static final ServerFeatures SERVER_24_8 = new ServerFeatures(24, 8, false, true);
+
+    private final DeleteGeneratorClickHouse generator = new DeleteGeneratorClickHouse();
+
+    @Test
+    void generatesLightweightDelete() throws Exception {
+        assertEquals("DELETE FROM db.events  WHERE id = 1",
+            generate(new StandaloneConfig(), SERVER_24_3, delete()));
+        assertEquals("DELETE FROM db.events ON CLUSTER 'company' WHERE id = 1",
+            generate(CLUSTER, SERVER_24_3, delete()));
+    }
+
+    @Test
+    void generatesLightweightDeleteInPartition() throws Exception {
+        assertEquals("DELETE FROM db.events  IN PARTITION 202401 WHERE id = 1",
+            generate(new StandaloneConfig(), SERVER_24_8, new PartitionedDeleteStatement(delete(), "202401")));
+        assertEquals("DELETE FROM db.events ON CLUSTER 'company' IN PARTITION 202401 WHERE id = 1",
+            generate(CLUSTER, SERVER_24_8, new PartitionedDeleteStatement(delete(), "202401")));
+    }
+
+    @Test
+    void generatesMutationInPartitionOnOlderServers() throws Exception {
+        // lightweight deletes only take IN PARTITION since 24.8
+        assertEquals("ALTER TABLE db.events  DELETE IN PARTITION 202401 WHERE id = 1",
+            generate(new StandaloneConfig(), SERVER_24_3, new PartitionedDeleteStatement(delete(), "202401")));
+        assertEquals("ALTER TABLE db.events ON CLUSTER 'company' DELETE IN PARTITION 202401 WHERE id = 1",
+            generate(CLUSTER, SERVER_24_3, new PartitionedDeleteStatement(delete(), "202401")));
+    }
+
+    @Test
+    void generatesMutationWithoutLightweightDeletes() throws Exception {
+        assertEquals("ALTER TABLE db.events  DELETE WHERE 1",
+            generate(new StandaloneConfig(), ServerFeatures.NONE, new DeleteStatement("db", null, "events")));
+        assertEquals("ALTER TABLE db.events ON CLUSTER 'company' DELETE WHERE id = 1",
+            generate(CLUSTER, ServerFeatures.NONE, delete()));
+    }
+
+    private String generate(LiquibaseClickHouseConfig config, ServerFeatures features, DeleteStatement delete)
+        throws Exception {
+        String[] sql = new String[1];
+        withParams(config, Map.of("mutation.lightweightDeletes", true), () -> {
+            sql[0] = generator.generateSql(delete, database(features), null)[0].toSql();
+        });
+        return sql[0];
+    }
+
+    private static DeleteStatement delete() {
+        return new DeleteStatement("db", null, "events").setWhere("id = 1");
+    }
+
+    private static ClickHouseDatabase database(ServerFeatures features) {
+        return new ClickHouseDatabase() {
+            @Override
+            public ServerFeatures getServerFeatures() {
+                return features;
+            }
+
+            @Override
+            public boolean usesLightweightDeletes() {
+                return features.lightweightDelete();
+            }
+        };
+    }
+}
@@ -0,0 +1,50 @@
+/*-
+ * #%L
+ * Liquibase extension for ClickHouse
+ * %%
+ * Copyright (C) 2024 - 2025 Genestack Limited
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package liquibase.ext.clickhouse.sqlgenerator.changelog;
+
+import liquibase.ext.clickhouse.database.ClickHouseDatabase;
+import liquibase.ext.clickhouse.statement.PartitionedUpdateStatement;
+import liquibase.statement.core.UpdateStatement;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UpdateGeneratorClickhouseUnitTest {
+
+    private final UpdateGeneratorClickhouse generator = new UpdateGeneratorClickhouse();
+
+    @Test
+    void generatesMutationInPartition() {
+        UpdateStatement update = new UpdateStatement("db", null, "events")
+                                     .addNewColumnValue("a", 1)
+                                     .setWhereClause("id > 1");
+        // a partitioned update is a mutation even where lightweight updates are used
+        ClickHouseDatabase database = new ClickHouseDatabase() {
+            @Override
+            public boolean usesLightweightUpdates(UpdateStatement statement) {
+                return true;
+            }
+        };
+        assertEquals("ALTER TABLE db.events UPDATE a = 1 IN PARTITION ID '202401' WHERE id > 1",
+            generator.generateSql(new PartitionedUpdateStatement(update, "202401"), database, null)[0].toSql());
+        assertEquals("ALTER TABLE db.events UPDATE a = 1 IN PARTITION ID 'all''s' WHERE id > 1",
+            generator.generateSql(new PartitionedUpdateStatement(update, "all's"), database, null)[0].toSql());
+    }
+}